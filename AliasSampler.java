@@ -0,0 +1,78 @@
+/** A sampler that draws a character in constant time, with Walker's alias method
+ *  (in the variant of Vose). The list is split into as many columns as characters,
+ *  each column of the same total probability 1/n. Column i holds character i with
+ *  probability prob[i], and character alias[i] with the rest of the column. */
+public class AliasSampler implements Sampler {
+
+    // The characters of the list
+    private final char[] chars;
+
+    // For each column, the probability to keep its own character, and the other character
+    private final double[] prob;
+    private final int[] alias;
+
+    /** Constructs a sampler for the given list. Only the counters of the list are used. */
+    public AliasSampler(List probs) {
+        int n = probs.getSize();
+        chars = new char[n];
+        prob = new double[n];
+        alias = new int[n];
+
+        // Scales the counters so that their average is 1
+        double[] scaled = new double[n];
+        long total = 0;
+        ListIterator it = probs.listIterator(0);
+        for (int i = 0; i < n; i++) {
+            CharData cd = it.next();
+            chars[i] = cd.chr;
+            scaled[i] = cd.count;
+            total += cd.count;
+        }
+        for (int i = 0; i < n; i++) {
+            scaled[i] = scaled[i] * n / total;
+        }
+
+        // Pairs each column below 1 with a column above 1, which fills it up
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int smalls = 0;
+        int larges = 0;
+        for (int i = 0; i < n; i++) {
+            if (scaled[i] < 1.0) {
+                small[smalls++] = i;
+            } else {
+                large[larges++] = i;
+            }
+        }
+        while (smalls > 0 && larges > 0) {
+            int s = small[--smalls];
+            int l = large[--larges];
+            prob[s] = scaled[s];
+            alias[s] = l;
+            scaled[l] = (scaled[l] + scaled[s]) - 1.0;
+            if (scaled[l] < 1.0) {
+                small[smalls++] = l;
+            } else {
+                large[larges++] = l;
+            }
+        }
+        // What is left is 1, up to rounding errors
+        while (larges > 0) {
+            prob[large[--larges]] = 1.0;
+        }
+        while (smalls > 0) {
+            prob[small[--smalls]] = 1.0;
+        }
+    }
+
+    /** Returns the character drawn by r: the integer part of r * n picks a column,
+     *  and the fractional part picks one of the two characters of the column. */
+    public char sample(double r) {
+        double u = r * chars.length;
+        int column = (int) u;
+        if (column == chars.length) {
+            column--;
+        }
+        return (u - column < prob[column]) ? chars[column] : chars[alias[column]];
+    }
+}
@@ -0,0 +1,242 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/** A window store that counts the characters that follow every context of length 0 to
+ *  maxOrder, in a single pass, and draws the next character from the longest context
+ *  (suffix of the window) that was seen. So generation never stops at an unseen window:
+ *  it backs off to shorter and shorter suffixes, down to the frequencies of single characters.
+ *  The contexts are kept in a trie that is read from the end of the context backwards:
+ *  the children of the node of a context are the contexts that extend it by one character
+ *  on the left. So contexts that end alike share their nodes, and all the orders are kept
+ *  in one structure instead of one map per order. Updating all the orders for a window is a
+ *  single walk down the trie.
+ *  Like in ContextTrie, all the data is kept in flat arrays of primitives: the nodes are
+ *  linked to their first child and next sibling by index, and the characters that follow
+ *  the contexts hang off their nodes in one shared pool of entries. Each node keeps the
+ *  total of its counts, which is all that a draw needs besides the counts themselves.
+ *  The store also counts the characters at the beginning of each text, after the contexts
+ *  that are shorter than the window length, and can draw a character after a window that
+ *  is shorter than the window length (see WindowStore.learnsShortWindows). */
+public class BackoffTrie implements WindowStore {
+
+
+    // The root node, which stands for the empty context: its successors are all the
+    // characters of the corpus
+    private static final int ROOT = 0;
+
+    // The longest context that is counted
+    private final int maxOrder;
+
+    // For each node: the character that extends its parent's context on the left, its first
+    // child, its next sibling, its first entry, and the sum of the counts of its entries
+    private char[] labels;
+    private int[] firstChildren;
+    private int[] nextSiblings;
+    private int[] heads;
+    private int[] totals;
+
+    // The number of nodes, including the root
+    private int nodes;
+
+    // The pool of entries: the character, count, and index of the next entry of the same node
+    private char[] chars;
+    private int[] counts;
+    private int[] nexts;
+
+    // The number of entries in the pool
+    private int entries;
+
+    /** Constructs an empty trie that counts contexts of up to maxOrder characters. */
+    public BackoffTrie(int maxOrder) {
+        this.maxOrder = maxOrder;
+        labels = new char[16];
+        firstChildren = new int[16];
+        nextSiblings = new int[16];
+        heads = new int[16];
+        totals = new int[16];
+        chars = new char[16];
+        counts = new int[16];
+        nexts = new int[16];
+        newNode('\0');
+    }
+
+    /** Returns true: the characters at the beginning of each text are counted after the
+     *  shorter contexts that precede them, and a short window backs off like any other. */
+    public boolean learnsShortWindows() {
+        return true;
+    }
+
+    /** Returns maxOrder, the length of the longest context: the window length of the
+     *  model that uses this trie. */
+    public int windowLength() {
+        return maxOrder;
+    }
+
+    /** Returns an estimate of the number of bytes used by the arrays of this trie. */
+    public long sizeInBytes() {
+        return 18L * labels.length + 10L * chars.length;
+    }
+
+    // Adds a node with the given label, and returns it.
+    private int newNode(char label) {
+        if (nodes == labels.length) {
+            int capacity = nodes + nodes / 2;
+            labels = Arrays.copyOf(labels, capacity);
+            firstChildren = Arrays.copyOf(firstChildren, capacity);
+            nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+            heads = Arrays.copyOf(heads, capacity);
+            totals = Arrays.copyOf(totals, capacity);
+        }
+        int node = nodes++;
+        labels[node] = label;
+        firstChildren[node] = WindowStores.NONE;
+        nextSiblings[node] = WindowStores.NONE;
+        heads[node] = WindowStores.NONE;
+        return node;
+    }
+
+    // Returns the child of the given node with the given label, or WindowStores.NONE.
+    private int child(int node, char c) {
+        int child = firstChildren[node];
+        while (child != WindowStores.NONE && labels[child] != c) {
+            child = nextSiblings[child];
+        }
+        return child;
+    }
+
+    // Returns the child of the given node with the given label, adding it if needed.
+    private int addChild(int node, char c) {
+        int child = child(node, c);
+        if (child == WindowStores.NONE) {
+            child = newNode(c);
+            nextSiblings[child] = firstChildren[node];
+            firstChildren[node] = child;
+        }
+        return child;
+    }
+
+    // Counts one occurrence of chr after the context of the given node.
+    private void count(int node, char chr) {
+        totals[node]++;
+        for (int e = heads[node]; e != WindowStores.NONE; e = nexts[e]) {
+            if (chars[e] == chr) {
+                counts[e]++;
+                return;
+            }
+        }
+        // A new successor goes first, so that the order-maxOrder contexts list their
+        // characters like a plain model does
+        if (entries == chars.length) {
+            int capacity = entries + entries / 2;
+            chars = Arrays.copyOf(chars, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            nexts = Arrays.copyOf(nexts, capacity);
+        }
+        int e = entries++;
+        chars[e] = chr;
+        counts[e] = 1;
+        nexts[e] = heads[node];
+        heads[node] = e;
+    }
+
+    /** Counts one occurrence of chr after each suffix of the given window (up to maxOrder
+     *  characters long), including the empty one. */
+    public void update(CharSequence window, char chr) {
+        int node = ROOT;
+        count(node, chr);
+        int end = window.length();
+        for (int i = end - 1; i >= Math.max(0, end - maxOrder); i--) {
+            node = addChild(node, window.charAt(i));
+            count(node, chr);
+        }
+    }
+
+    /** Does nothing: every order is drawn from its raw counts, which update() has
+     *  already added to each suffix of the window. */
+    public void calculateProbabilities() {
+    }
+
+    // Returns the node of the longest suffix of the given window that was seen.
+    private int longestSuffix(CharSequence window) {
+        int node = ROOT;
+        for (int i = window.length() - 1; i >= Math.max(0, window.length() - maxOrder); i--) {
+            int child = child(node, window.charAt(i));
+            if (child == WindowStores.NONE) {
+                break;
+            }
+            node = child;
+        }
+        return node;
+    }
+
+    /** Returns the length of the longest suffix of the given window that was seen. */
+    public int order(CharSequence window) {
+        int order = 0;
+        int node = ROOT;
+        for (int i = window.length() - 1; i >= Math.max(0, window.length() - maxOrder); i--) {
+            node = child(node, window.charAt(i));
+            if (node == WindowStores.NONE) {
+                break;
+            }
+            order++;
+        }
+        return order;
+    }
+
+    /** Returns a character drawn by r among the characters that followed the longest
+     *  seen suffix of the given window, in proportion to their counts after that suffix.
+     *  Returns -1 only if nothing was counted at all. */
+    public int getRandomChar(CharSequence window, double r) {
+        int node = longestSuffix(window);
+        if (heads[node] == WindowStores.NONE) {
+            return -1;
+        }
+        return chars[WindowStores.sample(counts, nexts, heads[node], totals[node], r)];
+    }
+
+    /** Returns the number of (non-empty) contexts in this trie. */
+    public int size() {
+        return nodes - 1;
+    }
+
+    /** Returns the list of characters that followed the given context, in the
+     *  textual format of List, or null if the context was never seen. */
+    public String toString(CharSequence context) {
+        if (context.length() > maxOrder) {
+            return null;
+        }
+        int node = ROOT;
+        for (int i = context.length() - 1; i >= 0 && node != WindowStores.NONE; i--) {
+            node = child(node, context.charAt(i));
+        }
+        if (node == WindowStores.NONE || heads[node] == WindowStores.NONE) {
+            return null;
+        }
+        int found = node;
+        return WindowStore.toString(
+                out -> WindowStores.appendEntries(out, chars, counts, nexts, heads[found], totals[found]));
+    }
+
+    /** Returns a textual representation of this trie, in the format of
+     *  LanguageModel.toString(): one line per context, shorter contexts before
+     *  the contexts that extend them. */
+    public String toString() {
+        return WindowStore.toString(this::appendTo);
+    }
+
+    /** Appends the text of toString() to the given output, one context at a time. */
+    public void appendTo(Appendable out) throws IOException {
+        appendTo(out, ROOT, "");
+    }
+
+    private void appendTo(Appendable out, int node, String context) throws IOException {
+        if (heads[node] != WindowStores.NONE) {
+            out.append(context).append(" : ");
+            WindowStores.appendEntries(out, chars, counts, nexts, heads[node], totals[node]);
+            out.append('\n');
+        }
+        for (int child = firstChildren[node]; child != WindowStores.NONE; child = nextSiblings[child]) {
+            appendTo(out, child, labels[child] + context);
+        }
+    }
+}
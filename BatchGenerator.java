@@ -0,0 +1,58 @@
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/** Runs many generation requests against one trained model, concurrently.
+ *  Each request draws its characters with its own random number generator, seeded with
+ *  the seed of the request, so the threads share no mutable state, and each text is the
+ *  one that the first generate() of a new LanguageModel(windowLength, seed), trained on the
+ *  same corpus, would return (for the default algorithm, "Random"), whatever the order in
+ *  which the requests run.
+ *  The model must not be trained while requests are running. */
+public class BatchGenerator {
+
+    // The model that generates the texts
+    private final LanguageModel model;
+
+    // Runs the requests
+    private final ExecutorService executor;
+
+    /** Constructs a generator that runs requests with the given executor. On Java 21,
+     *  Executors.newVirtualThreadPerTaskExecutor() runs each request on a virtual thread. */
+    public BatchGenerator(LanguageModel model, ExecutorService executor) {
+        this.model = model;
+        this.executor = executor;
+    }
+
+    /** Constructs a generator that runs requests on a pool of the given number of threads. */
+    public BatchGenerator(LanguageModel model, int threads) {
+        this(model, Executors.newFixedThreadPool(threads));
+    }
+
+    /** Runs the given requests, and returns their texts, in the order of the requests. */
+    public String[] generate(GenerationRequest[] requests) throws InterruptedException {
+        // An ArrayList, since the repository's List class shadows java.util.List
+        ArrayList<Future<String>> futures = new ArrayList<Future<String>>(requests.length);
+        for (GenerationRequest request : requests) {
+            futures.add(executor.submit(() ->
+                model.generate(request.initialText, request.textLength,
+                               LanguageModel.randomGenerator(request.algorithm, request.seed))));
+        }
+        String[] texts = new String[requests.length];
+        for (int i = 0; i < requests.length; i++) {
+            try {
+                texts[i] = futures.get(i).get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Request " + requests[i] + " failed", e.getCause());
+            }
+        }
+        return texts;
+    }
+
+    /** Stops the threads of this generator, once the running requests are done. */
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
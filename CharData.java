@@ -1,3 +1,5 @@
+import java.io.IOException;
+
 /** Represents a character data object. 
  *  A character data object has a char value,
  *  a counter, and two probability fields. */
@@ -32,4 +34,16 @@ public class CharData {
 	public String toString() {
 		return "(" + chr + " " + count + " " + p + " " + cp + ")";
 	}
+
+	/** Appends the textual representation of this CharData object to the given output. */
+	public void appendTo(Appendable out) throws IOException {
+		appendTo(out, chr, count, p, cp);
+	}
+
+	/** Appends the textual representation of a CharData object with the given fields
+	 *  to the given output, without building the object or a String. */
+	public static void appendTo(Appendable out, char chr, int count, double p, double cp) throws IOException {
+		out.append('(').append(chr).append(' ').append(Integer.toString(count))
+		   .append(' ').append(Double.toString(p)).append(' ').append(Double.toString(cp)).append(')');
+	}
 }
\ No newline at end of file
@@ -0,0 +1,216 @@
+import java.util.Arrays;
+
+/** A list of character data, kept in parallel arrays of primitives instead of linked nodes.
+ *  Supports the same operations as List, with the same order of elements and the same
+ *  textual representation, but finding a character is a single scan of a char array,
+ *  and no object is allocated per element.
+ *  Like in List, a new character is added at the beginning of the list. To avoid shifting
+ *  the arrays, the elements are stored in reverse order: element i of the list is at
+ *  index size - 1 - i of the arrays. */
+public class CharDataArray {
+
+    // The characters, counters, probabilities and cumulative probabilities of the elements
+    private char[] chars;
+    private int[] counts;
+    private double[] p;
+    private double[] cp;
+
+    // The number of elements in this list
+    private int size;
+
+    /** Constructs an empty list. */
+    public CharDataArray() {
+        chars = new char[4];
+        counts = new int[4];
+        p = new double[4];
+        cp = new double[4];
+        size = 0;
+    }
+
+    /** Returns the number of elements in this list. */
+    public int getSize() {
+        return size;
+    }
+
+    // Returns the array index of the element at the given list index.
+    private int slot(int index) {
+        return size - 1 - index;
+    }
+
+    /** Returns the CharData of the first element in this list, or null if the list is empty.
+     *  The returned object is a copy: changing it does not change this list. */
+    public CharData getFirst() {
+        if (size == 0) {
+            return null;
+        }
+        return get(0);
+    }
+
+    /** Adds a character, with a counter of 1, to the beginning of this list. */
+    public void addFirst(char chr) {
+        if (size == chars.length) {
+            int capacity = 2 * size;
+            chars = Arrays.copyOf(chars, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            p = Arrays.copyOf(p, capacity);
+            cp = Arrays.copyOf(cp, capacity);
+        }
+        chars[size] = chr;
+        counts[size] = 1;
+        p[size] = 0;
+        cp[size] = 0;
+        size++;
+    }
+
+    /** Textual representation of this list, in the format of List. */
+    public String toString() {
+        return WindowStore.toString(out -> {
+            out.append('(');
+            for (int i = size - 1; i >= 0; i--) {
+                CharData.appendTo(out, chars[i], counts[i], p[i], cp[i]);
+                if (i > 0) {
+                    out.append(' ');
+                }
+            }
+            out.append(')');
+        });
+    }
+
+    /** Returns the index of the first element with the given chr, or -1 if there is none. */
+    public int indexOf(char chr) {
+        for (int i = size - 1; i >= 0; i--) {
+            if (chars[i] == chr) {
+                return slot(i);
+            }
+        }
+        return -1;
+    }
+
+    /** Increments the counter of the given character, or adds it if it is not in this list. */
+    public void update(char chr) {
+        for (int i = size - 1; i >= 0; i--) {
+            if (chars[i] == chr) {
+                counts[i]++;
+                return;
+            }
+        }
+        addFirst(chr);
+    }
+
+    /** Removes the element with the given character. Returns false if there is no such element. */
+    public boolean remove(char chr) {
+        for (int i = size - 1; i >= 0; i--) {
+            if (chars[i] == chr) {
+                int moved = size - 1 - i;
+                System.arraycopy(chars, i + 1, chars, i, moved);
+                System.arraycopy(counts, i + 1, counts, i, moved);
+                System.arraycopy(p, i + 1, p, i, moved);
+                System.arraycopy(cp, i + 1, cp, i, moved);
+                size--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the element at the given index, as a new CharData object.
+     *  The returned object is a copy: changing it does not change this list. */
+    public CharData get(int index) {
+        int i = checkedSlot(index);
+        CharData cd = new CharData(chars[i]);
+        cd.count = counts[i];
+        cd.p = p[i];
+        cd.cp = cp[i];
+        return cd;
+    }
+
+    // Returns the array index of the element at the given list index,
+    // or throws an exception if there is no such element.
+    private int checkedSlot(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException();
+        }
+        return slot(index);
+    }
+
+    /** Returns the character of the element at the given index. */
+    public char charAt(int index) {
+        return chars[checkedSlot(index)];
+    }
+
+    /** Returns the counter of the element at the given index. */
+    public int countAt(int index) {
+        return counts[checkedSlot(index)];
+    }
+
+    /** Returns the probability of the element at the given index. */
+    public double probabilityAt(int index) {
+        return p[checkedSlot(index)];
+    }
+
+    /** Returns the cumulative probability of the element at the given index. */
+    public double cumulativeAt(int index) {
+        return cp[checkedSlot(index)];
+    }
+
+    /** Returns an iterator over the elements of this list, starting at the given index,
+     *  or null if the index is out of range, like List.listIterator(index). */
+    public Iterator listIterator(int index) {
+        if (index < 0 || index > size) {
+            return null;
+        }
+        return new Iterator(index);
+    }
+
+    /** An iterator over the elements of a CharDataArray, in list order. Like get(index),
+     *  it returns copies of the elements. The list must not change during the iteration. */
+    public class Iterator {
+
+        // The list index of the next element of this iteration
+        private int index;
+
+        Iterator(int index) {
+            this.index = index;
+        }
+
+        /** Checks if this iterator has more elements to process. */
+        public boolean hasNext() {
+            return index < size;
+        }
+
+        /** Returns the current element of this iteration, and advances to the next one.
+         *  Should be called only if hasNext() is true. */
+        public CharData next() {
+            return get(index++);
+        }
+    }
+
+    /** Computes and sets the probabilities and cumulative probabilities of the elements,
+     *  from their counters, with the same arithmetic as LanguageModel.calculateProbabilities(List). */
+    public void calculateProbabilities() {
+        // The counts in list order, which is the reverse of the order of the arrays
+        int[] listCounts = new int[size];
+        int total = 0;
+        for (int i = 0; i < size; i++) {
+            listCounts[i] = counts[slot(i)];
+            total += listCounts[i];
+        }
+        double[] listCps = new double[size];
+        WindowStores.cumulativeProbabilities(listCounts, size, total, listCps);
+        for (int i = 0; i < size; i++) {
+            p[slot(i)] = WindowStores.probability(listCounts[i], total);
+            cp[slot(i)] = listCps[i];
+        }
+    }
+
+    /** Returns the character of the first element whose cumulative probability is
+     *  greater than r, or the character of the last element if there is none.
+     *  The list must not be empty. */
+    public char charFor(double r) {
+        int i = size - 1;
+        while (i > 0 && cp[i] <= r) {
+            i--;
+        }
+        return chars[i];
+    }
+}
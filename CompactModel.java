@@ -0,0 +1,301 @@
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+import java.util.Map;
+
+/** A read-only window store that holds a pruned copy of the windows of a trained model
+ *  in a few flat arrays, built by LanguageModel.compact().
+ *  The characters that follow a window are pruned first: the ones counted fewer than
+ *  minCount times are dropped, then only the maxSuccessors most frequent ones are kept
+ *  (the first in list order, among equal counts). A window with no character left is
+ *  dropped. The probabilities of a window are computed again from the counts it keeps,
+ *  with the same arithmetic as LanguageModel.calculateProbabilities(List). With minCount 1
+ *  and maxSuccessors Integer.MAX_VALUE nothing is dropped, and in the LINEAR sampling mode
+ *  a compacted model generates the same texts as before; it cannot be trained or saved.
+ *  The windows are laid out one after the other like in a MappedModel, but on the heap:
+ *  the characters of all the windows in one char array, and the characters, counts and
+ *  cumulative probabilities of all the entries in three arrays, found from the index of
+ *  their window by offset. Windows are found by open addressing on their 64-bit hash code,
+ *  without storing it. A character is drawn by binary search in the cumulative
+ *  probabilities, like in the LINEAR sampling mode. */
+public class CompactModel implements WindowStore {
+
+    // The length of the windows
+    private final int windowLength;
+
+    // The open addressing slots: the index of the window stored in each slot plus one,
+    // or 0 for an empty slot
+    private final int[] slots;
+
+    // The characters of window k are keys[k * windowLength] ... keys[(k + 1) * windowLength - 1]
+    private final char[] keys;
+
+    // The entries of window k are starts[k] ... starts[k + 1] - 1
+    private final int[] starts;
+
+    // The character, count and cumulative probability of each entry, in list order
+    private final char[] chars;
+    private final int[] counts;
+    private final double[] cps;
+
+    /** Builds a compact copy of the given windows, keeping the characters counted at least
+     *  minCount times, and at most maxSuccessors characters per window. */
+    public CompactModel(int windowLength, Map<String, List> windows, int minCount, int maxSuccessors) {
+        if (minCount < 1 || maxSuccessors < 1) {
+            throw new IllegalArgumentException("minCount and maxSuccessors must be positive");
+        }
+        this.windowLength = windowLength;
+        // First pass: the number of windows and entries that are kept
+        int keptWindows = 0;
+        long keptEntries = 0;
+        for (List probs : windows.values()) {
+            int kept = Math.min(countAtLeast(probs, minCount), maxSuccessors);
+            if (kept > 0) {
+                keptWindows++;
+                keptEntries += kept;
+            }
+        }
+        if (keptEntries > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many entries for a compact model");
+        }
+        int length = 16;
+        while (keptWindows > length / 2) {
+            length *= 2;
+        }
+        slots = new int[length];
+        keys = new char[keptWindows * windowLength];
+        starts = new int[keptWindows + 1];
+        chars = new char[(int) keptEntries];
+        counts = new int[(int) keptEntries];
+        cps = new double[(int) keptEntries];
+
+        // Second pass: copies the kept entries, in the order of the map
+        int k = 0;
+        int e = 0;
+        for (Map.Entry<String, List> entry : windows.entrySet()) {
+            List probs = entry.getValue();
+            int n = probs.getSize();
+            char[] listChars = new char[n];
+            int[] listCounts = new int[n];
+            ListIterator it = probs.listIterator(0);
+            for (int i = 0; i < n; i++) {
+                CharData cd = it.next();
+                listChars[i] = cd.chr;
+                listCounts[i] = cd.count;
+            }
+            boolean[] keep = prune(listCounts, minCount, maxSuccessors);
+            int total = 0;
+            for (int i = 0; i < n; i++) {
+                if (keep[i]) {
+                    chars[e] = listChars[i];
+                    counts[e] = listCounts[i];
+                    total += listCounts[i];
+                    e++;
+                }
+            }
+            if (e == starts[k]) {
+                continue;
+            }
+            double[] windowCps = new double[e - starts[k]];
+            WindowStores.cumulativeProbabilities(Arrays.copyOfRange(counts, starts[k], e), e - starts[k],
+                                                 total, windowCps);
+            System.arraycopy(windowCps, 0, cps, starts[k], windowCps.length);
+            entry.getKey().getChars(0, windowLength, keys, k * windowLength);
+            int slot = WindowStores.slotOf(WindowKey.longHashOf(entry.getKey()), slots.length);
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & (slots.length - 1);
+            }
+            slots[slot] = k + 1;
+            k++;
+            starts[k] = e;
+        }
+    }
+
+    // Returns the number of characters of the given list counted at least minCount times.
+    private static int countAtLeast(List probs, int minCount) {
+        int n = 0;
+        ListIterator it = probs.listIterator(0);
+        while (it.hasNext()) {
+            if (it.next().count >= minCount) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    // Returns which of the given counts are kept: the ones that are at least minCount,
+    // and of these, the maxSuccessors largest (the first ones, among equal counts).
+    private static boolean[] prune(int[] counts, int minCount, int maxSuccessors) {
+        boolean[] keep = new boolean[counts.length];
+        int kept = 0;
+        for (int i = 0; i < counts.length; i++) {
+            keep[i] = counts[i] >= minCount;
+            if (keep[i]) {
+                kept++;
+            }
+        }
+        // Drops the smallest counts, the last ones first, until maxSuccessors are left
+        while (kept > maxSuccessors) {
+            int smallest = -1;
+            for (int i = 0; i < counts.length; i++) {
+                if (keep[i] && (smallest == -1 || counts[i] <= counts[smallest])) {
+                    smallest = i;
+                }
+            }
+            keep[smallest] = false;
+            kept--;
+        }
+        return keep;
+    }
+
+    // Returns the index of the given window, or -1 if it is not in this model.
+    private int indexOf(CharSequence window) {
+        if (window.length() != windowLength) {
+            return -1;
+        }
+        long hash = WindowStores.hashOf(window);
+        for (int slot = WindowStores.slotOf(hash, slots.length); slots[slot] != 0; slot = (slot + 1) & (slots.length - 1)) {
+            if (keyEquals(slots[slot] - 1, window)) {
+                return slots[slot] - 1;
+            }
+        }
+        return -1;
+    }
+
+    // Checks if window k has the characters of the given window.
+    private boolean keyEquals(int k, CharSequence window) {
+        int offset = k * windowLength;
+        for (int i = 0; i < windowLength; i++) {
+            if (keys[offset + i] != window.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the length of the windows of this model. */
+    public int windowLength() {
+        return windowLength;
+    }
+
+    /** Returns the number of windows of this model. */
+    public int size() {
+        return starts.length - 1;
+    }
+
+    /** Returns the number of entries of this model, that is, the number of
+     *  (window, character) pairs that were kept. */
+    public int entries() {
+        return chars.length;
+    }
+
+    /** Returns the number of bytes used by the arrays of this model. */
+    public long sizeInBytes() {
+        return 4L * slots.length + 2L * keys.length + 4L * starts.length + 14L * chars.length;
+    }
+
+    /** Returns an estimate of the number of bytes used by the given windows of a model on
+     *  a 64-bit JVM with compressed references: the table and nodes of the HashMap, the
+     *  String keys, and the List, Node and CharData objects. Samplers are not counted. */
+    public static long estimateBytes(Map<String, List> windows) {
+        int table = 16;
+        while (windows.size() > 0.75 * table) {
+            table *= 2;
+        }
+        long bytes = 16 + 4L * table;
+        for (Map.Entry<String, List> entry : windows.entrySet()) {
+            String key = entry.getKey();
+            boolean latin1 = key.chars().allMatch(c -> c < 256);
+            int keyBytes = latin1 ? key.length() : 2 * key.length();
+            // HashMap.Node, String, its byte array, and List
+            bytes += 32 + 24 + align(16 + keyBytes) + 32;
+            // Node and CharData of each entry
+            bytes += (24 + 40) * (long) entry.getValue().getSize();
+        }
+        return bytes;
+    }
+
+    // Rounds the given size up to a multiple of 8 bytes, the alignment of objects.
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+
+    /** Not supported: a compact model is read-only. */
+    public void update(CharSequence window, char chr) {
+        throw new UnsupportedOperationException("A compact model is read-only");
+    }
+
+    /** Does nothing: the cumulative probabilities are computed when the model is built. */
+    public void calculateProbabilities() {
+    }
+
+    /** Returns the first character that follows the given window whose cumulative
+     *  probability is greater than r (found by binary search), or -1 if the window
+     *  is not in this model. */
+    public int getRandomChar(CharSequence window, double r) {
+        int k = indexOf(window);
+        if (k == -1) {
+            return -1;
+        }
+        int low = starts[k];
+        int high = starts[k + 1] - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cps[mid] > r) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return chars[low];
+    }
+
+    /** Returns the number of times that the given character was counted right after the
+     *  given window, or 0 if it was pruned. */
+    public int count(CharSequence window, char chr) {
+        int k = indexOf(window);
+        if (k != -1) {
+            for (int e = starts[k]; e < starts[k + 1]; e++) {
+                if (chars[e] == chr) {
+                    return counts[e];
+                }
+            }
+        }
+        return 0;
+    }
+
+    /** Returns the list of characters that follow the given window, in the textual
+     *  format of List, or null if the window is not in this model. */
+    public String toString(CharSequence window) {
+        int k = indexOf(window);
+        return (k == -1) ? null : WindowStore.toString(out -> appendEntries(out, k));
+    }
+
+    // Appends the entries of window k in the textual format of List.
+    private void appendEntries(Appendable out, int k) throws IOException {
+        int total = 0;
+        for (int e = starts[k]; e < starts[k + 1]; e++) {
+            total += counts[e];
+        }
+        WindowStores.appendEntries(out, Arrays.copyOfRange(chars, starts[k], starts[k + 1]),
+                                   Arrays.copyOfRange(counts, starts[k], starts[k + 1]),
+                                   starts[k + 1] - starts[k], total);
+    }
+
+    /** Returns a textual representation of this model, in the format of
+     *  LanguageModel.toString(). Windows are listed in the order of the map they were
+     *  built from. */
+    public String toString() {
+        return WindowStore.toString(this::appendTo);
+    }
+
+    /** Appends the text of toString() to the given output, one window at a time. */
+    public void appendTo(Appendable out) throws IOException {
+        for (int k = 0; k < size(); k++) {
+            out.append(CharBuffer.wrap(keys, k * windowLength, windowLength));
+            out.append(" : ");
+            appendEntries(out, k);
+            out.append('\n');
+        }
+    }
+}
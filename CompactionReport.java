@@ -0,0 +1,35 @@
+/** The sizes of a model before and after LanguageModel.compact(): its number of windows,
+ *  its number of entries ((window, character) pairs), and the number of bytes they use. */
+public class CompactionReport {
+
+    // The number of windows before and after the compaction
+    final int windowsBefore;
+    final int windowsAfter;
+
+    // The number of entries before and after the compaction
+    final long entriesBefore;
+    final long entriesAfter;
+
+    // The bytes used by the windows before (an estimate, see CompactModel.estimateBytes)
+    // and after the compaction
+    final long bytesBefore;
+    final long bytesAfter;
+
+    /** Constructs a report with the given sizes. */
+    public CompactionReport(int windowsBefore, long entriesBefore, long bytesBefore,
+                            int windowsAfter, long entriesAfter, long bytesAfter) {
+        this.windowsBefore = windowsBefore;
+        this.entriesBefore = entriesBefore;
+        this.bytesBefore = bytesBefore;
+        this.windowsAfter = windowsAfter;
+        this.entriesAfter = entriesAfter;
+        this.bytesAfter = bytesAfter;
+    }
+
+    /** Returns a textual representation of this report. */
+    public String toString() {
+        return "windows " + windowsBefore + " -> " + windowsAfter
+               + ", entries " + entriesBefore + " -> " + entriesAfter
+               + ", bytes " + bytesBefore + " -> " + bytesAfter;
+    }
+}
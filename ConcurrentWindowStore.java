@@ -0,0 +1,273 @@
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/** A window store that several threads can train at the same time: for example, one thread
+ *  per document feed, each calling update(text) on one shared LanguageModel.
+ *  The windows are kept in a ConcurrentHashMap by their 64-bit hash code, whose bins are
+ *  locked separately, and told apart by comparing their characters; the
+ *  characters that follow a window are counted with LongAdders, which threads increment
+ *  without contending. A character is added to a window under the lock of that window only,
+ *  the first time it follows the window; counting it afterwards takes no lock.
+ *  The probabilities of a window are computed again when it is sampled after it changed.
+ *  Like in a List, a new character is added at the beginning. The counts are exact whatever
+ *  the interleaving of the threads, but the order of the characters of a window follows the
+ *  order in which the threads first counted them.
+ *  A LanguageModel whose windows are in this store learns each update() as a separate
+ *  document, since its updates come from separate threads. */
+public class ConcurrentWindowStore implements WindowStore {
+
+    /** The characters that follow a window, and their counters. */
+    static class Successors {
+
+        // The window, and the next window with the same hash code, or null
+        private final String window;
+        private final Successors next;
+
+        // The characters and their counters, in list order. Replaced as a whole (under the
+        // lock of this object) when a character is added, so they can be read without it.
+        private volatile Entries entries = new Entries(new char[0], new LongAdder[0]);
+
+        // True if a counter changed since the cumulative probabilities were computed
+        private volatile boolean changed = true;
+
+        // The characters, counts and cumulative probabilities when they were last computed
+        private volatile Sampled sampled;
+
+        Successors(String window, Successors next) {
+            this.window = window;
+            this.next = next;
+        }
+
+        // Counts one occurrence of the given character.
+        void update(char chr) {
+            LongAdder count = entries.find(chr);
+            if (count == null) {
+                synchronized (this) {
+                    count = entries.find(chr);
+                    if (count == null) {
+                        count = new LongAdder();
+                        entries = entries.addFirst(chr, count);
+                    }
+                }
+            }
+            count.increment();
+            // Reads the flag first, so that threads that count the same window do not
+            // all write to its cache line
+            if (!changed) {
+                changed = true;
+            }
+        }
+
+        // Computes the cumulative probabilities if a counter changed, with the same
+        // arithmetic as LanguageModel.calculateProbabilities(List).
+        synchronized void calculateProbabilities() {
+            if (!changed && sampled != null) {
+                return;
+            }
+            // Cleared first, so that a count that is missed by this snapshot marks it again
+            changed = false;
+            Entries snapshot = entries;
+            int n = snapshot.chars.length;
+            int[] counts = new int[n];
+            int total = 0;
+            for (int i = 0; i < n; i++) {
+                counts[i] = (int) snapshot.counts[i].sum();
+                total += counts[i];
+            }
+            double[] cps = new double[n];
+            WindowStores.cumulativeProbabilities(counts, n, total, cps);
+            sampled = new Sampled(snapshot.chars, counts, cps);
+        }
+
+        // Returns the last computed probabilities, after computing them again if needed.
+        Sampled sampled() {
+            Sampled current = sampled;
+            if (changed || current == null) {
+                calculateProbabilities();
+                current = sampled;
+            }
+            return current;
+        }
+    }
+
+    /** The characters of a window and their counters, never changed once built. */
+    static class Entries {
+        final char[] chars;
+        final LongAdder[] counts;
+
+        Entries(char[] chars, LongAdder[] counts) {
+            this.chars = chars;
+            this.counts = counts;
+        }
+
+        // Returns the counter of the given character, or null.
+        LongAdder find(char chr) {
+            for (int i = 0; i < chars.length; i++) {
+                if (chars[i] == chr) {
+                    return counts[i];
+                }
+            }
+            return null;
+        }
+
+        // Returns these entries with the given character and counter at the beginning.
+        Entries addFirst(char chr, LongAdder count) {
+            int n = chars.length;
+            char[] newChars = new char[n + 1];
+            LongAdder[] newCounts = new LongAdder[n + 1];
+            newChars[0] = chr;
+            newCounts[0] = count;
+            System.arraycopy(chars, 0, newChars, 1, n);
+            System.arraycopy(counts, 0, newCounts, 1, n);
+            return new Entries(newChars, newCounts);
+        }
+    }
+
+    /** A snapshot of the counters of a window, with their cumulative probabilities. */
+    static class Sampled {
+        final char[] chars;
+        final int[] counts;
+        final double[] cps;
+
+        Sampled(char[] chars, int[] counts, double[] cps) {
+            this.chars = chars;
+            this.counts = counts;
+            this.cps = cps;
+        }
+
+        // Returns the first character whose cumulative probability is greater than r.
+        char sample(double r) {
+            int i = 0;
+            while (i < chars.length - 1 && cps[i] <= r) {
+                i++;
+            }
+            return chars[i];
+        }
+
+        // Appends the characters in the textual format of List.
+        void appendTo(Appendable out) throws IOException {
+            int total = 0;
+            for (int count : counts) {
+                total += count;
+            }
+            WindowStores.appendEntries(out, chars, counts, chars.length, total);
+        }
+    }
+
+    // The length of the windows
+    private final int windowLength;
+
+    // The windows, and the characters that follow them, by the 64-bit hash code of the window:
+    // the windows with the same hash code are chained
+    private final ConcurrentHashMap<Long, Successors> windows = new ConcurrentHashMap<Long, Successors>();
+
+    // The number of windows
+    private final LongAdder size = new LongAdder();
+
+    /** Constructs an empty store for windows of the given length. */
+    public ConcurrentWindowStore(int windowLength) {
+        this.windowLength = windowLength;
+    }
+
+    /** Returns the length of the windows of this store. */
+    public int windowLength() {
+        return windowLength;
+    }
+
+    /** Counts one occurrence of the given character right after the given window.
+     *  Can be called by several threads at the same time. */
+    public void update(CharSequence window, char chr) {
+        long hash = WindowStores.hashOf(window);
+        Successors successors = find(window, hash);
+        if (successors == null) {
+            windows.compute(hash, (key, head) -> {
+                for (Successors s = head; s != null; s = s.next) {
+                    if (s.window.contentEquals(window)) {
+                        return head;
+                    }
+                }
+                size.increment();
+                return new Successors(window.toString(), head);
+            });
+            successors = find(window, hash);
+        }
+        successors.update(chr);
+    }
+
+    // Returns the successors of the given window, whose hash code is given, or null if
+    // the window was never seen. Compares the characters, so that no String is built.
+    private Successors find(CharSequence window, long hash) {
+        Successors s = windows.get(hash);
+        while (s != null && !s.window.contentEquals(window)) {
+            s = s.next;
+        }
+        return s;
+    }
+
+    // Returns the successors of the given window, or null if the window was never seen.
+    private Successors find(CharSequence window) {
+        return find(window, WindowStores.hashOf(window));
+    }
+
+    /** Does nothing: a window computes its probabilities when it is sampled after it
+     *  changed. The model calls this at the end of every update, and producer threads
+     *  would otherwise go over the whole store after each document. */
+    public void calculateProbabilities() {
+    }
+
+    /** Returns the first character that follows the given window whose cumulative
+     *  probability is greater than r, or -1 if the window was never seen. */
+    public int getRandomChar(CharSequence window, double r) {
+        Successors successors = find(window);
+        if (successors == null) {
+            return -1;
+        }
+        Sampled sampled = successors.sampled();
+        // A window that another thread has just added may have no character yet
+        return (sampled.chars.length == 0) ? -1 : sampled.sample(r);
+    }
+
+    /** Returns the number of times that the given character was counted right after
+     *  the given window. */
+    public long count(CharSequence window, char chr) {
+        Successors successors = find(window);
+        LongAdder count = (successors == null) ? null : successors.entries.find(chr);
+        return (count == null) ? 0 : count.sum();
+    }
+
+    /** Returns the number of different characters that follow the given window. */
+    public int successors(CharSequence window) {
+        Successors successors = find(window);
+        return (successors == null) ? 0 : successors.entries.chars.length;
+    }
+
+    /** Returns the number of windows in this store. */
+    public int size() {
+        return size.intValue();
+    }
+
+    /** Returns the list of characters that follow the given window, in the textual
+     *  format of List, or null if the window was never seen. */
+    public String toString(CharSequence window) {
+        Successors successors = find(window);
+        return (successors == null) ? null : WindowStore.toString(successors.sampled()::appendTo);
+    }
+
+    /** Returns a textual representation of this store, in the format of
+     *  LanguageModel.toString(). Windows are listed in the order of the map. */
+    public String toString() {
+        return WindowStore.toString(this::appendTo);
+    }
+
+    /** Appends the text of toString() to the given output, one window at a time. */
+    public void appendTo(Appendable out) throws IOException {
+        for (Successors head : windows.values()) {
+            for (Successors s = head; s != null; s = s.next) {
+                out.append(s.window).append(" : ");
+                s.sampled().appendTo(out);
+                out.append('\n');
+            }
+        }
+    }
+}
@@ -0,0 +1,246 @@
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/** A window store that keeps the windows in a trie, so that windows with a common prefix
+ *  share their first nodes, instead of each being a full copy of its characters.
+ *  The trie holds every string of up to windowLength characters of the corpus (a suffix trie
+ *  cut at depth windowLength). Each node has a suffix link to the node of its string without
+ *  its first character. So the node of the next window, window.substring(1) + c, is the child
+ *  c of the suffix link of the node of the window: sliding the window is one transition,
+ *  instead of hashing the whole window again. The store tells the next position to the
+ *  WindowKey of the model (see WindowKey.expect), so training and generation with a model
+ *  that uses this store make one transition per character.
+ *  The characters that follow each window hang off its node, in a pool of entries like the
+ *  one of WindowTable. All the data is kept in flat arrays of primitives, and the counts
+ *  are the only thing that a draw reads. */
+public class ContextTrie implements WindowStore {
+
+
+    // The root node, which stands for the empty string
+    private static final int ROOT = 0;
+
+    // The length of the windows
+    private final int windowLength;
+
+    // For each node: the character of the edge that leads to it, its first child, its next
+    // sibling, its suffix link, its first entry, and the sum of the counts of its entries
+    private char[] labels;
+    private int[] firstChildren;
+    private int[] nextSiblings;
+    private int[] links;
+    private int[] heads;
+    private int[] totals;
+
+    // The number of nodes, and the number of windows (nodes with entries)
+    private int nodes;
+    private int windows;
+
+    // The pool of entries: the character, count, and index of the next entry of the same window
+    private char[] chars;
+    private int[] counts;
+    private int[] nexts;
+
+    // The number of entries in the pool
+    private int entries;
+
+    /** Constructs an empty trie for windows of the given length. */
+    public ContextTrie(int windowLength) {
+        this.windowLength = windowLength;
+        labels = new char[16];
+        firstChildren = new int[16];
+        nextSiblings = new int[16];
+        links = new int[16];
+        heads = new int[16];
+        totals = new int[16];
+        chars = new char[16];
+        counts = new int[16];
+        nexts = new int[16];
+        newNode('\0', WindowStores.NONE);
+    }
+
+    /** Returns the length of the windows of this trie. */
+    public int windowLength() {
+        return windowLength;
+    }
+
+    /** Returns the number of windows in this trie. */
+    public int size() {
+        return windows;
+    }
+
+    /** Returns the number of nodes of this trie, including the root. */
+    public int nodes() {
+        return nodes;
+    }
+
+    /** Returns an estimate of the number of bytes used by the arrays of this trie. */
+    public long sizeInBytes() {
+        return 22L * labels.length + 10L * chars.length;
+    }
+
+    // Adds a node with the given label and suffix link, and returns it.
+    private int newNode(char label, int link) {
+        if (nodes == labels.length) {
+            int capacity = 2 * nodes;
+            labels = Arrays.copyOf(labels, capacity);
+            firstChildren = Arrays.copyOf(firstChildren, capacity);
+            nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+            links = Arrays.copyOf(links, capacity);
+            heads = Arrays.copyOf(heads, capacity);
+            totals = Arrays.copyOf(totals, capacity);
+        }
+        int node = nodes++;
+        labels[node] = label;
+        firstChildren[node] = WindowStores.NONE;
+        nextSiblings[node] = WindowStores.NONE;
+        links[node] = link;
+        heads[node] = WindowStores.NONE;
+        return node;
+    }
+
+    // Returns the child of the given node with the given label, or WindowStores.NONE.
+    private int child(int node, char c) {
+        int child = firstChildren[node];
+        while (child != WindowStores.NONE && labels[child] != c) {
+            child = nextSiblings[child];
+        }
+        return child;
+    }
+
+    // Returns the child of the given node with the given label, adding it if needed.
+    // The suffix link of a new child is the child c of the suffix link of its parent.
+    private int addChild(int node, char c) {
+        int child = child(node, c);
+        if (child != WindowStores.NONE) {
+            return child;
+        }
+        int link = (node == ROOT) ? ROOT : addChild(links[node], c);
+        child = newNode(c, link);
+        nextSiblings[child] = firstChildren[node];
+        firstChildren[node] = child;
+        return child;
+    }
+
+    // Returns the node of the given window, or WindowStores.NONE. Uses the hint of a WindowKey,
+    // or walks down from the root.
+    private int nodeOf(CharSequence window) {
+        if (window instanceof WindowKey && ((WindowKey) window).hint() != WindowStores.NONE) {
+            return ((WindowKey) window).hint();
+        }
+        if (window.length() != windowLength) {
+            return WindowStores.NONE;
+        }
+        int node = ROOT;
+        for (int i = 0; i < windowLength && node != WindowStores.NONE; i++) {
+            node = child(node, window.charAt(i));
+        }
+        return node;
+    }
+
+    // Tells a WindowKey the node it will stand for once c is appended to it:
+    // the transition from the given node of the window.
+    private void expectNext(CharSequence window, int node, char c) {
+        if (window instanceof WindowKey) {
+            int next = (windowLength == 0) ? ROOT : child(links[node], c);
+            if (next != WindowStores.NONE) {
+                ((WindowKey) window).expect(c, next);
+            }
+        }
+    }
+
+    /** Counts one occurrence of the given character right after the given window. */
+    public void update(CharSequence window, char chr) {
+        int node = nodeOf(window);
+        if (node == WindowStores.NONE) {
+            node = ROOT;
+            for (int i = 0; i < windowLength; i++) {
+                node = addChild(node, window.charAt(i));
+            }
+        }
+        if (heads[node] == WindowStores.NONE) {
+            windows++;
+        }
+        totals[node]++;
+        int e = heads[node];
+        while (e != WindowStores.NONE && chars[e] != chr) {
+            e = nexts[e];
+        }
+        if (e != WindowStores.NONE) {
+            counts[e]++;
+        } else {
+            // Prepended to the entries of the node, the place List.update gives it
+            if (entries == chars.length) {
+                int capacity = 2 * entries;
+                chars = Arrays.copyOf(chars, capacity);
+                counts = Arrays.copyOf(counts, capacity);
+                nexts = Arrays.copyOf(nexts, capacity);
+            }
+            e = entries++;
+            chars[e] = chr;
+            counts[e] = 1;
+            nexts[e] = heads[node];
+            heads[node] = e;
+        }
+        // Makes sure that the next window has a node, and hands it to the window
+        if (windowLength > 0) {
+            addChild(links[node], chr);
+        }
+        expectNext(window, node, chr);
+    }
+
+    /** Does nothing: the nodes hold counts, not probabilities, and a draw divides
+     *  them by the total of the node. */
+    public void calculateProbabilities() {
+    }
+
+    /** Returns the first character that follows the given window whose cumulative
+     *  probability is greater than r, or -1 if the window was never seen, and hands the
+     *  node of the next window to the WindowKey. */
+    public int getRandomChar(CharSequence window, double r) {
+        int node = nodeOf(window);
+        if (node == WindowStores.NONE || heads[node] == WindowStores.NONE) {
+            return -1;
+        }
+        int e = WindowStores.sample(counts, nexts, heads[node], totals[node], r);
+        expectNext(window, node, chars[e]);
+        return chars[e];
+    }
+
+    /** Returns the list of characters that follow the given window, in the textual
+     *  format of List, or null if the window was never seen. */
+    public String toString(CharSequence window) {
+        int node = nodeOf(window);
+        if (node == WindowStores.NONE || heads[node] == WindowStores.NONE) {
+            return null;
+        }
+        return WindowStore.toString(
+                out -> WindowStores.appendEntries(out, chars, counts, nexts, heads[node], totals[node]));
+    }
+
+    /** Returns a textual representation of this trie, in the format of
+     *  LanguageModel.toString(). Windows are listed in the order of the trie. */
+    public String toString() {
+        return WindowStore.toString(this::appendTo);
+    }
+
+    /** Appends the text of toString() to the given output, one window at a time. */
+    public void appendTo(Appendable out) throws IOException {
+        appendTo(out, ROOT, new char[windowLength], 0);
+    }
+
+    private void appendTo(Appendable out, int node, char[] window, int depth) throws IOException {
+        if (depth == windowLength) {
+            if (heads[node] != WindowStores.NONE) {
+                out.append(CharBuffer.wrap(window)).append(" : ");
+                WindowStores.appendEntries(out, chars, counts, nexts, heads[node], totals[node]);
+                out.append('\n');
+            }
+            return;
+        }
+        for (int child = firstChildren[node]; child != WindowStores.NONE; child = nextSiblings[child]) {
+            window[depth] = labels[child];
+            appendTo(out, child, window, depth + 1);
+        }
+    }
+}
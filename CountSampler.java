@@ -0,0 +1,77 @@
+import java.io.IOException;
+import java.util.random.RandomGenerator;
+
+/** A sampler that draws a character from the counters of a list, without probabilities:
+ *  it draws a uniform integer in [0, total), and finds by binary search the first character
+ *  whose cumulative counter is greater than it. Each character is drawn exactly with its
+ *  count / total, and the list needs no p and cp fields.
+ *  toString() renders the list in the format of List, computing p and cp on demand. */
+public class CountSampler implements Sampler {
+
+    // The characters of the list, and their cumulative counters, in list order
+    private final char[] chars;
+    private final int[] cumulativeCounts;
+
+    /** Constructs a sampler for the given list. Only the counters of the list are used. */
+    public CountSampler(List probs) {
+        int size = probs.getSize();
+        chars = new char[size];
+        cumulativeCounts = new int[size];
+        int cumulative = 0;
+        ListIterator it = probs.listIterator(0);
+        for (int i = 0; i < size; i++) {
+            CharData cd = it.next();
+            cumulative += cd.count;
+            chars[i] = cd.chr;
+            cumulativeCounts[i] = cumulative;
+        }
+    }
+
+    /** Returns the sum of the counters of the list. */
+    public int total() {
+        return cumulativeCounts[chars.length - 1];
+    }
+
+    /** Returns the first character whose cumulative counter is greater than n,
+     *  for n between 0 and total() - 1. */
+    public char sample(int n) {
+        int low = 0;
+        int high = chars.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cumulativeCounts[mid] > n) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return chars[low];
+    }
+
+    /** Returns the character drawn by the given random number r (a number between 0 and 1),
+     *  scaled to a counter. */
+    public char sample(double r) {
+        return sample((int) (r * total()));
+    }
+
+    /** Draws a uniform integer in [0, total()) with the given generator,
+     *  and returns the character it draws. */
+    public char sample(RandomGenerator random) {
+        return sample(random.nextInt(total()));
+    }
+
+    /** Textual representation of the list, in the format of List, with the probabilities
+     *  that LanguageModel.calculateProbabilities(List) would compute. */
+    public String toString() {
+        return WindowStore.toString(this::appendTo);
+    }
+
+    /** Appends the text of toString() to the given output. */
+    public void appendTo(Appendable out) throws IOException {
+        int[] counts = new int[chars.length];
+        for (int i = 0; i < chars.length; i++) {
+            counts[i] = cumulativeCounts[i] - (i == 0 ? 0 : cumulativeCounts[i - 1]);
+        }
+        WindowStores.appendEntries(out, chars, counts, chars.length, total());
+    }
+}
@@ -0,0 +1,37 @@
+/** A sampler that keeps the cumulative probabilities of a list in an array,
+ *  and draws a character by binary search in it. */
+public class CumulativeSampler implements Sampler {
+
+    // The characters of the list, and their cumulative probabilities, in list order
+    private final char[] chars;
+    private final double[] cp;
+
+    /** Constructs a sampler for the given list, whose probabilities were calculated. */
+    public CumulativeSampler(List probs) {
+        int size = probs.getSize();
+        chars = new char[size];
+        cp = new double[size];
+        ListIterator it = probs.listIterator(0);
+        for (int i = 0; i < size; i++) {
+            CharData cd = it.next();
+            chars[i] = cd.chr;
+            cp[i] = cd.cp;
+        }
+    }
+
+    /** Returns the first character whose cumulative probability is greater than r,
+     *  or the last character if there is none, like LanguageModel.getRandomChar. */
+    public char sample(double r) {
+        int low = 0;
+        int high = chars.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cp[mid] > r) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return chars[low];
+    }
+}
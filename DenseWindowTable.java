@@ -0,0 +1,307 @@
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/** A window store for short windows over a small alphabet, that keeps the counts in dense
+ *  arrays indexed by the windows themselves: no hashing, and no object per window.
+ *  Each character of the alphabet has a code between 0 and a - 1 (a is the size of the
+ *  alphabet), and a window c1 ... cw is the row c1 * a^(w-1) + ... + cw of the table, so
+ *  the count of the character c after the window is at counts[row * a + code(c)].
+ *  The row of the next window is (row * a + code(c)) % a^w: the table tells it to the
+ *  WindowKey of the model (see WindowKey.expect), so training and generation compute it
+ *  with one multiplication instead of reading the whole window.
+ *  The table holds a^(w+1) cells, so it suits window lengths of 1 to 3; forCorpus() only
+ *  builds one that fits a memory budget.
+ *  The characters of a window are listed in the order of the alphabet, not in the order of
+ *  a List, so a model with this table draws other characters than a model with a
+ *  CharDataMap for the same random numbers, with the same probabilities.
+ *  The alphabet is fixed: a LanguageModel whose windows are in this table rejects a text
+ *  (in update(), train() or trainMapped()) that has a character out of the alphabet with
+ *  an IllegalArgumentException, before counting any of it. */
+public class DenseWindowTable implements WindowStore {
+
+    /** The default memory budget of forCorpus(), in bytes. */
+    public static final long DEFAULT_BUDGET = 64L << 20;
+
+    // The length of the windows
+    private final int windowLength;
+
+    // The characters of the alphabet, in the order of their codes
+    private final char[] alphabet;
+
+    // The code of each character plus one, or 0 for a character not in the alphabet
+    private final int[] codes = new int[Character.MAX_VALUE + 1];
+
+    // The number of rows, a^w
+    private final int rows;
+
+    // The count of each character after each window, and the sum of the counts of each row
+    private final int[] counts;
+    private final int[] totals;
+
+    // The cumulative counts of each row, computed by calculateProbabilities()
+    private final int[] cumulative;
+
+    // The rows whose counts changed since calculateProbabilities() last ran, and a flag
+    // for each row that is among them
+    private int[] changedRows = new int[16];
+    private int changedCount;
+    private final boolean[] changed;
+
+    // The number of windows that were seen
+    private int windows;
+
+    /** Constructs an empty table for windows of the given length over the given alphabet. */
+    public DenseWindowTable(int windowLength, char[] alphabet) {
+        if (cells(windowLength, alphabet.length) > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The table is too large for windows of length " + windowLength
+                                               + " over " + alphabet.length + " characters");
+        }
+        this.windowLength = windowLength;
+        this.alphabet = alphabet.clone();
+        for (int i = 0; i < alphabet.length; i++) {
+            codes[alphabet[i]] = i + 1;
+        }
+        rows = (int) cells(windowLength - 1, alphabet.length);
+        counts = new int[rows * alphabet.length];
+        cumulative = new int[rows * alphabet.length];
+        totals = new int[rows];
+        changed = new boolean[rows];
+    }
+
+    /** Returns a table for windows of the given length over the alphabet of the given corpus,
+     *  or null if it would use more than the given number of bytes. Reads the corpus once. */
+    public static DenseWindowTable forCorpus(String fileName, int windowLength, long budget) {
+        char[] alphabet;
+        try {
+            alphabet = alphabetOf(fileName);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not read " + fileName, e);
+        }
+        if (sizeInBytes(windowLength, alphabet.length) > budget) {
+            return null;
+        }
+        return new DenseWindowTable(windowLength, alphabet);
+    }
+
+    /** Returns the characters that appear in the given file, in increasing order. */
+    public static char[] alphabetOf(String fileName) throws IOException {
+        boolean[] seen = new boolean[Character.MAX_VALUE + 1];
+        int size = 0;
+        char[] buffer = new char[1 << 16];
+        try (MappedCorpus in = new MappedCorpus(fileName)) {
+            int n;
+            while ((n = in.read(buffer, 0, buffer.length)) != -1) {
+                for (int i = 0; i < n; i++) {
+                    if (!seen[buffer[i]]) {
+                        seen[buffer[i]] = true;
+                        size++;
+                    }
+                }
+            }
+        }
+        char[] alphabet = new char[size];
+        int k = 0;
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            if (seen[c]) {
+                alphabet[k++] = (char) c;
+            }
+        }
+        return alphabet;
+    }
+
+    /** Returns the number of bytes used by a table for windows of the given length
+     *  over an alphabet of the given size. */
+    public static long sizeInBytes(int windowLength, int alphabetSize) {
+        return 8 * cells(windowLength, alphabetSize) + 4 * cells(windowLength - 1, alphabetSize)
+               + 4L * (Character.MAX_VALUE + 1);
+    }
+
+    // Returns alphabetSize^(windowLength + 1), or Long.MAX_VALUE if it is larger.
+    private static long cells(int windowLength, int alphabetSize) {
+        long cells = 1;
+        for (int i = 0; i <= windowLength; i++) {
+            if (cells > Integer.MAX_VALUE) {
+                return Long.MAX_VALUE;
+            }
+            cells *= alphabetSize;
+        }
+        return cells;
+    }
+
+    /** Returns the number of bytes used by this table. */
+    public long sizeInBytes() {
+        return sizeInBytes(windowLength, alphabet.length);
+    }
+
+    // Returns the row of the given window, or -1 if one of its characters is not in the
+    // alphabet. Uses the hint of a WindowKey, or reads the window.
+    private int rowOf(CharSequence window) {
+        if (window instanceof WindowKey && ((WindowKey) window).hint() != -1) {
+            return ((WindowKey) window).hint();
+        }
+        if (window.length() != windowLength) {
+            return -1;
+        }
+        int row = 0;
+        for (int i = 0; i < windowLength; i++) {
+            int code = codes[window.charAt(i)] - 1;
+            if (code == -1) {
+                return -1;
+            }
+            row = row * alphabet.length + code;
+        }
+        return row;
+    }
+
+    // Tells a WindowKey the row of the next window, once c is appended to it.
+    private void expectNext(CharSequence window, int row, int code) {
+        if (window instanceof WindowKey) {
+            ((WindowKey) window).expect(alphabet[code], (row * alphabet.length + code) % rows);
+        }
+    }
+
+    /** Returns the index of the first character of the given text that is not in the
+     *  alphabet of this table, or -1 if all its characters are. */
+    public int indexOfUnknown(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (codes[text.charAt(i)] == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Counts one occurrence of the given character right after the given window.
+     *  Throws an IllegalArgumentException if the window or the character is not in the
+     *  alphabet: LanguageModel.update checks its text with indexOfUnknown() first. */
+    public void update(CharSequence window, char chr) {
+        int row = rowOf(window);
+        int code = codes[chr] - 1;
+        if (row == -1 || code == -1) {
+            throw new IllegalArgumentException("The window \"" + window + "\" or the character '" + chr
+                                               + "' is not in the alphabet of this table");
+        }
+        if (totals[row] == 0) {
+            windows++;
+        }
+        counts[row * alphabet.length + code]++;
+        totals[row]++;
+        if (!changed[row]) {
+            changed[row] = true;
+            if (changedCount == changedRows.length) {
+                changedRows = Arrays.copyOf(changedRows, 2 * changedCount);
+            }
+            changedRows[changedCount++] = row;
+        }
+        expectNext(window, row, code);
+    }
+
+    /** Computes the cumulative counts of the rows whose counts changed since the last
+     *  call, so that the cost is proportional to the text that was learned in between. */
+    public void calculateProbabilities() {
+        int a = alphabet.length;
+        for (int k = 0; k < changedCount; k++) {
+            int row = changedRows[k];
+            int sum = 0;
+            for (int i = row * a; i < (row + 1) * a; i++) {
+                sum += counts[i];
+                cumulative[i] = sum;
+            }
+            changed[row] = false;
+        }
+        changedCount = 0;
+    }
+
+    /** Returns the first character (in the order of the alphabet) that follows the given
+     *  window, whose cumulative probability is greater than r, or -1 if the window was
+     *  never seen. Finds it by binary search in the cumulative counts of the window. */
+    public int getRandomChar(CharSequence window, double r) {
+        int row = rowOf(window);
+        if (row == -1 || totals[row] == 0) {
+            return -1;
+        }
+        int n = (int) (r * totals[row]);
+        int low = row * alphabet.length;
+        int high = low + alphabet.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cumulative[mid] > n) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        int code = low - row * alphabet.length;
+        expectNext(window, row, code);
+        return alphabet[code];
+    }
+
+    /** Returns the number of times that the given character was counted right after
+     *  the given window. */
+    public int count(CharSequence window, char chr) {
+        int row = rowOf(window);
+        int code = codes[chr] - 1;
+        return (row == -1 || code == -1) ? 0 : counts[row * alphabet.length + code];
+    }
+
+    /** Returns the length of the windows of this table. */
+    public int windowLength() {
+        return windowLength;
+    }
+
+    /** Returns the number of windows in this table that were seen. */
+    public int size() {
+        return windows;
+    }
+
+    /** Returns the list of characters that follow the given window, in the textual
+     *  format of List (in the order of the alphabet), or null if the window was never seen. */
+    public String toString(CharSequence window) {
+        int row = rowOf(window);
+        if (row == -1 || totals[row] == 0) {
+            return null;
+        }
+        return WindowStore.toString(out -> appendRow(out, row));
+    }
+
+    // Appends the characters that follow the window of the given row, in the format of List.
+    private void appendRow(Appendable out, int row) throws IOException {
+        char[] rowChars = new char[alphabet.length];
+        int[] rowCounts = new int[alphabet.length];
+        int n = 0;
+        for (int code = 0; code < alphabet.length; code++) {
+            int count = counts[row * alphabet.length + code];
+            if (count > 0) {
+                rowChars[n] = alphabet[code];
+                rowCounts[n] = count;
+                n++;
+            }
+        }
+        WindowStores.appendEntries(out, rowChars, rowCounts, n, totals[row]);
+    }
+
+    /** Returns a textual representation of this table, in the format of
+     *  LanguageModel.toString(). Windows are listed in the order of their rows. */
+    public String toString() {
+        return WindowStore.toString(this::appendTo);
+    }
+
+    /** Appends the text of toString() to the given output, one window at a time. */
+    public void appendTo(Appendable out) throws IOException {
+        char[] window = new char[windowLength];
+        for (int row = 0; row < rows; row++) {
+            if (totals[row] == 0) {
+                continue;
+            }
+            int rest = row;
+            for (int i = windowLength - 1; i >= 0; i--) {
+                window[i] = alphabet[rest % alphabet.length];
+                rest /= alphabet.length;
+            }
+            out.append(CharBuffer.wrap(window)).append(" : ");
+            appendRow(out, row);
+            out.append('\n');
+        }
+    }
+}
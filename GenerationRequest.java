@@ -0,0 +1,36 @@
+/** A request to generate a random text: the initial text, the number of characters
+ *  to generate after it, and the algorithm and seed of the random number generator. */
+public class GenerationRequest {
+
+    // The text that the generated text starts with
+    final String initialText;
+
+    // The number of characters to generate after the initial text
+    final int textLength;
+
+    // The seed of the random number generator of this request
+    final int seed;
+
+    // The algorithm of the random number generator of this request,
+    // as given to LanguageModel.randomGenerator()
+    final String algorithm;
+
+    /** Constructs a request whose characters are drawn with a java.util.Random. */
+    public GenerationRequest(String initialText, int textLength, int seed) {
+        this(initialText, textLength, seed, "Random");
+    }
+
+    /** Constructs a request whose characters are drawn with a generator of the given
+     *  algorithm, such as "SplittableRandom" or "L64X128MixRandom". */
+    public GenerationRequest(String initialText, int textLength, int seed, String algorithm) {
+        this.initialText = initialText;
+        this.textLength = textLength;
+        this.seed = seed;
+        this.algorithm = algorithm;
+    }
+
+    /** Returns a textual representation of this request. */
+    public String toString() {
+        return "(" + initialText + " " + textLength + " " + seed + " " + algorithm + ")";
+    }
+}
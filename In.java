@@ -7,15 +7,20 @@
  *
  ******************************************************************************/
 
-import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.net.URL;
 import java.net.Socket;
 import java.net.URLConnection;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.InputMismatchException;
 import java.util.Locale;
 import java.util.NoSuchElementException;
@@ -45,6 +50,13 @@ import java.util.regex.Pattern;
  *  consist of \n, \r, \r\n, and Unicode hex code points 0x2028, 0x2029, 0x0085;
  *  see <a href="http://www.docjar.com/html/api/java/util/Scanner.java.html">
  *  Scanner.java</a> (NB: Java 6u23 and earlier uses only \r, \r, \r\n).
+ *  <p>
+ *  An input stream that is opened from a file, URL, socket or standard input
+ *  starts in char mode: the characters are decoded into a large buffer, and
+ *  {@link #readChar()}, {@link #hasNextChar()}, {@link #peekChar()},
+ *  {@link #read(char[], int, int)} and {@link #isEmpty()} read them from it,
+ *  without the regular expressions of the scanner. The first call to another
+ *  method reads the rest of the input with a scanner, with the same results.
  *
  *  @author David Pritchard
  *  @author Robert Sedgewick
@@ -67,6 +79,9 @@ public final class In {
     // makes whitespace characters significant
     private static final Pattern EMPTY_PATTERN = Pattern.compile("");
 
+    // matches any single character, including a line terminator
+    private static final Pattern ANY_CHAR_PATTERN = Pattern.compile("(?s).");
+
     // used to read the entire input. source:
     // http://weblogs.java.net/blog/pat/archive/2004/10/stupid_scanner_1.html
     private static final Pattern EVERYTHING_PATTERN = Pattern.compile("\\A");
@@ -75,12 +90,30 @@ public final class In {
 
     private Scanner scanner;
 
+    // the size of the buffer of the char mode
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // In char mode, the characters are decoded into a buffer, and the char-level
+    // methods read them from it, without the scanner. The first call to a token or
+    // line method creates the scanner on the rest of the input, and ends the char mode.
+    private boolean charMode;
+
+    // the decoded source of the characters, and the buffer of the char mode:
+    // the characters from position to limit were decoded but not read yet
+    private Reader reader;
+    private char[] buffer;
+    private int position;
+    private int limit;
+
+    // the characters of the buffer from position to whitespaceEnd are whitespace,
+    // so that isEmpty() does not look at them again
+    private int whitespaceEnd;
+
    /**
      * Initializes an input stream from standard input.
      */
     public In() {
-        scanner = new Scanner(new BufferedInputStream(System.in), CHARSET_NAME);
-        scanner.useLocale(LOCALE);
+        setInput(System.in);
     }
 
    /**
@@ -94,8 +127,7 @@ public final class In {
         if (socket == null) throw new IllegalArgumentException("socket argument is null");
         try {
             InputStream is = socket.getInputStream();
-            scanner = new Scanner(new BufferedInputStream(is), CHARSET_NAME);
-            scanner.useLocale(LOCALE);
+            setInput(is);
         }
         catch (IOException ioe) {
             throw new IllegalArgumentException("Could not open " + socket, ioe);
@@ -114,8 +146,7 @@ public final class In {
         try {
             URLConnection site = url.openConnection();
             InputStream is     = site.getInputStream();
-            scanner            = new Scanner(new BufferedInputStream(is), CHARSET_NAME);
-            scanner.useLocale(LOCALE);
+            setInput(is);
         }
         catch (IOException ioe) {
             throw new IllegalArgumentException("Could not open " + url, ioe);
@@ -132,11 +163,8 @@ public final class In {
     public In(File file) {
         if (file == null) throw new IllegalArgumentException("file argument is null");
         try {
-            // for consistency with StdIn, wrap with BufferedInputStream instead of use
-            // file as argument to Scanner
             FileInputStream fis = new FileInputStream(file);
-            scanner = new Scanner(new BufferedInputStream(fis), CHARSET_NAME);
-            scanner.useLocale(LOCALE);
+            setInput(fis);
         }
         catch (IOException ioe) {
             throw new IllegalArgumentException("Could not open " + file, ioe);
@@ -159,11 +187,8 @@ public final class In {
             // first try to read file from local file system
             File file = new File(name);
             if (file.exists()) {
-                // for consistency with StdIn, wrap with BufferedInputStream instead of use
-                // file as argument to Scanner
                 FileInputStream fis = new FileInputStream(file);
-                scanner = new Scanner(new BufferedInputStream(fis), CHARSET_NAME);
-                scanner.useLocale(LOCALE);
+                setInput(fis);
                 return;
             }
 
@@ -187,8 +212,7 @@ public final class In {
             // site.addRequestProperty("User-Agent", "Mozilla/4.76");
 
             InputStream is     = site.getInputStream();
-            scanner            = new Scanner(new BufferedInputStream(is), CHARSET_NAME);
-            scanner.useLocale(LOCALE);
+            setInput(is);
         }
         catch (IOException ioe) {
             throw new IllegalArgumentException("Could not open " + name, ioe);
@@ -210,13 +234,80 @@ public final class In {
         this.scanner = scanner;
     }
 
+    // Reads the given stream in char mode, decoding it like the scanner would:
+    // as UTF-8, with malformed input replaced.
+    private void setInput(InputStream is) {
+        CharsetDecoder decoder = Charset.forName(CHARSET_NAME).newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        reader = new InputStreamReader(is, decoder);
+        buffer = new char[BUFFER_SIZE];
+        charMode = true;
+    }
+
+    // Decodes more characters into the buffer, after the ones not read yet, growing it if
+    // it is full. Returns false if the input has ended.
+    private boolean fill() {
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            whitespaceEnd = Math.max(0, whitespaceEnd - position);
+            position = 0;
+        }
+        if (limit == buffer.length) {
+            buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+        }
+        try {
+            int n;
+            do {
+                n = reader.read(buffer, limit, buffer.length - limit);
+            } while (n == 0);
+            if (n == -1) {
+                return false;
+            }
+            limit += n;
+            return true;
+        }
+        catch (IOException ioe) {
+            throw new IllegalStateException("Could not read the input", ioe);
+        }
+    }
+
+    // Reads up to len characters, from the buffer first, then from the reader.
+    private int readBuffered(char[] cbuf, int off, int len) {
+        if (len == 0) return 0;
+        if (position == limit && !fill()) return -1;
+        int n = Math.min(len, limit - position);
+        System.arraycopy(buffer, position, cbuf, off, n);
+        position += n;
+        return n;
+    }
+
+    // Returns the scanner, after creating it on the rest of the input if this
+    // stream is in char mode.
+    private Scanner scanner() {
+        if (charMode) {
+            charMode = false;
+            scanner = new Scanner(new Reader() {
+                public int read(char[] cbuf, int off, int len) {
+                    return readBuffered(cbuf, off, len);
+                }
+                public void close() throws IOException {
+                    reader.close();
+                }
+            });
+            scanner.useLocale(LOCALE);
+        }
+        return scanner;
+    }
+
     /**
      * Returns true if this input stream exists.
      *
      * @return {@code true} if this input stream exists; {@code false} otherwise
      */
     public boolean exists()  {
-        return scanner != null;
+        return scanner != null || charMode;
     }
 
     ////  begin: section (2 of 2) of code duplicated from In to StdIn,
@@ -231,7 +322,17 @@ public final class In {
      *         {@code false} otherwise
      */
     public boolean isEmpty() {
-        return !scanner.hasNext();
+        if (charMode) {
+            // looks ahead for a non-whitespace character, without reading it,
+            // from where the last look ahead stopped
+            if (whitespaceEnd < position) whitespaceEnd = position;
+            while (true) {
+                if (whitespaceEnd == limit && !fill()) return true;
+                if (!Character.isWhitespace(buffer[whitespaceEnd])) return false;
+                whitespaceEnd++;
+            }
+        }
+        return !scanner().hasNext();
     }
 
    /**
@@ -244,7 +345,8 @@ public final class In {
      *         {@code false} otherwise
      */
     public boolean hasNextLine() {
-        return scanner.hasNextLine();
+        if (charMode) return hasNextChar();
+        return scanner().hasNextLine();
     }
 
     /**
@@ -256,9 +358,10 @@ public final class In {
      *         {@code false} otherwise
      */
     public boolean hasNextChar() {
-        scanner.useDelimiter(EMPTY_PATTERN);
-        boolean result = scanner.hasNext();
-        scanner.useDelimiter(WHITESPACE_PATTERN);
+        if (charMode) return position < limit || fill();
+        scanner().useDelimiter(EMPTY_PATTERN);
+        boolean result = scanner().hasNext();
+        scanner().useDelimiter(WHITESPACE_PATTERN);
         return result;
     }
 
@@ -271,7 +374,7 @@ public final class In {
     public String readLine() {
         String line;
         try {
-            line = scanner.nextLine();
+            line = scanner().nextLine();
         }
         catch (NoSuchElementException e) {
             line = null;
@@ -286,12 +389,19 @@ public final class In {
      * @throws NoSuchElementException if the input stream is empty
      */
     public char readChar() {
-        scanner.useDelimiter(EMPTY_PATTERN);
+        if (charMode) {
+            if (position == limit && !fill()) {
+                throw new NoSuchElementException("attempts to read a 'char' value from the input stream, "
+                                               + "but no more tokens are available");
+            }
+            return buffer[position++];
+        }
+        scanner().useDelimiter(EMPTY_PATTERN);
         try {
-            String ch = scanner.next();
+            String ch = scanner().next();
             assert ch.length() == 1 : "Internal (Std)In.readChar() error!"
                 + " Please contact the authors.";
-            scanner.useDelimiter(WHITESPACE_PATTERN);
+            scanner().useDelimiter(WHITESPACE_PATTERN);
             return ch.charAt(0);
         }
         catch (NoSuchElementException e) {
@@ -307,12 +417,12 @@ public final class In {
      * @return the remainder of this input stream, as a string
      */
     public String readAll() {
-        if (!scanner.hasNextLine())
+        if (!scanner().hasNextLine())
             return "";
 
-        String result = scanner.useDelimiter(EVERYTHING_PATTERN).next();
+        String result = scanner().useDelimiter(EVERYTHING_PATTERN).next();
         // not that important to reset delimeter, since now scanner is empty
-        scanner.useDelimiter(WHITESPACE_PATTERN); // but let's do it anyway
+        scanner().useDelimiter(WHITESPACE_PATTERN); // but let's do it anyway
         return result;
     }
 
@@ -325,7 +435,7 @@ public final class In {
      */
     public String readString() {
         try {
-            return scanner.next();
+            return scanner().next();
         }
         catch (NoSuchElementException e) {
             throw new NoSuchElementException("attempts to read a 'String' value from the input stream, "
@@ -343,10 +453,10 @@ public final class In {
      */
     public int readInt() {
         try {
-            return scanner.nextInt();
+            return scanner().nextInt();
         }
         catch (InputMismatchException e) {
-            String token = scanner.next();
+            String token = scanner().next();
             throw new InputMismatchException("attempts to read an 'int' value from the input stream, "
                                            + "but the next token is \"" + token + "\"");
         }
@@ -366,10 +476,10 @@ public final class In {
      */
     public double readDouble() {
         try {
-            return scanner.nextDouble();
+            return scanner().nextDouble();
         }
         catch (InputMismatchException e) {
-            String token = scanner.next();
+            String token = scanner().next();
             throw new InputMismatchException("attempts to read a 'double' value from the input stream, "
                                            + "but the next token is \"" + token + "\"");
         }
@@ -389,10 +499,10 @@ public final class In {
      */
     public float readFloat() {
         try {
-            return scanner.nextFloat();
+            return scanner().nextFloat();
         }
         catch (InputMismatchException e) {
-            String token = scanner.next();
+            String token = scanner().next();
             throw new InputMismatchException("attempts to read a 'float' value from the input stream, "
                                            + "but the next token is \"" + token + "\"");
         }
@@ -412,10 +522,10 @@ public final class In {
      */
     public long readLong() {
         try {
-            return scanner.nextLong();
+            return scanner().nextLong();
         }
         catch (InputMismatchException e) {
-            String token = scanner.next();
+            String token = scanner().next();
             throw new InputMismatchException("attempts to read a 'long' value from the input stream, "
                                            + "but the next token is \"" + token + "\"");
         }
@@ -435,10 +545,10 @@ public final class In {
      */
     public short readShort() {
         try {
-            return scanner.nextShort();
+            return scanner().nextShort();
         }
         catch (InputMismatchException e) {
-            String token = scanner.next();
+            String token = scanner().next();
             throw new InputMismatchException("attempts to read a 'short' value from the input stream, "
                                            + "but the next token is \"" + token + "\"");
         }
@@ -460,10 +570,10 @@ public final class In {
      */
     public byte readByte() {
         try {
-            return scanner.nextByte();
+            return scanner().nextByte();
         }
         catch (InputMismatchException e) {
-            String token = scanner.next();
+            String token = scanner().next();
             throw new InputMismatchException("attempts to read a 'byte' value from the input stream, "
                                            + "but the next token is \"" + token + "\"");
         }
@@ -573,12 +683,66 @@ public final class In {
         return vals;
     }
 
+   /**
+     * Returns the next character in this input stream, without reading it:
+     * the next call to {@link #readChar()} returns it.
+     *
+     * @return the next {@code char} in this input stream
+     * @throws NoSuchElementException if the input stream is empty
+     */
+    public char peekChar() {
+        if (!charMode) {
+            // Like readChar(), but the scanner does not advance past the character
+            scanner().useDelimiter(EMPTY_PATTERN);
+            boolean found = scanner().hasNext(ANY_CHAR_PATTERN);
+            char ch = found ? scanner().match().group().charAt(0) : 0;
+            scanner().useDelimiter(WHITESPACE_PATTERN);
+            if (!found) {
+                throw new NoSuchElementException("attempts to peek a 'char' value from the input stream, "
+                                               + "but no more tokens are available");
+            }
+            return ch;
+        }
+        if (position == limit && !fill()) {
+            throw new NoSuchElementException("attempts to peek a 'char' value from the input stream, "
+                                           + "but no more tokens are available");
+        }
+        return buffer[position];
+    }
+
+   /**
+     * Reads up to {@code len} characters of this input stream into {@code cbuf},
+     * starting at index {@code off}, like {@link Reader#read(char[], int, int)}.
+     *
+     * @param  cbuf the array that receives the characters
+     * @param  off the index of {@code cbuf} of the first character
+     * @param  len the maximal number of characters to read
+     * @return the number of characters read, or -1 if the input stream is empty
+     */
+    public int read(char[] cbuf, int off, int len) {
+        if (charMode) return readBuffered(cbuf, off, len);
+        int count = 0;
+        while (count < len && hasNextChar()) {
+            cbuf[off + count++] = readChar();
+        }
+        return (count == 0 && len > 0) ? -1 : count;
+    }
+
     ///// end: section (2 of 2) of code duplicated from In to StdIn */
 
    /**
      * Closes this input stream.
      */
     public void close() {
+        if (charMode) {
+            try {
+                reader.close();
+            }
+            catch (IOException ioe) {
+                throw new IllegalStateException("Could not close the input", ioe);
+            }
+            return;
+        }
         scanner.close();
     }
 
@@ -0,0 +1,75 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/** Metrics that emit Java Flight Recorder events, to be seen in a recording
+ *  (for example: java -XX:StartFlightRecording=filename=lm.jfr ...) next to the events
+ *  of the JVM. Only the trainings and the generations are events; the scan depths, one per
+ *  character, are too many to record one by one, and are ignored. When no recording is
+ *  running, the events are disabled and cost a check. */
+public class JfrMetrics implements ModelMetrics {
+
+    @Name("LanguageModel.Training")
+    @Label("Training")
+    @Category("Language Model")
+    @Description("A training of a language model")
+    static class TrainingEvent extends Event {
+        @Label("Characters")
+        long characters;
+
+        @Label("Duration of the training")
+        @Timespan(Timespan.NANOSECONDS)
+        long nanos;
+
+        @Label("Windows")
+        int windows;
+    }
+
+    @Name("LanguageModel.Generation")
+    @Label("Generation")
+    @Category("Language Model")
+    @Description("A text generated by a language model")
+    static class GenerationEvent extends Event {
+        @Label("Characters")
+        long characters;
+
+        @Label("Duration of the generation")
+        @Timespan(Timespan.NANOSECONDS)
+        long nanos;
+
+        @Label("Stopped on a missing window")
+        boolean windowMissing;
+    }
+
+    public void trained(long characters, long nanos, int windows) {
+        TrainingEvent event = new TrainingEvent();
+        if (event.isEnabled()) {
+            event.characters = characters;
+            event.nanos = nanos;
+            event.windows = windows;
+            event.commit();
+        }
+    }
+
+    public void changedListLength(int length) {
+    }
+
+    public void listUpdated(int scanDepth) {
+    }
+
+    public void charDrawn(int scanDepth) {
+    }
+
+    public void generated(long characters, long nanos, boolean windowMissing) {
+        GenerationEvent event = new GenerationEvent();
+        if (event.isEnabled()) {
+            event.characters = characters;
+            event.nanos = nanos;
+            event.windowMissing = windowMissing;
+            event.commit();
+        }
+    }
+}
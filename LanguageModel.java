@@ -1,8 +1,24 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.Random;
+import java.util.random.RandomGenerator;
+import java.util.random.RandomGeneratorFactory;
 
 public class LanguageModel {
 
+    // The number of characters that train(Reader) reads at a time
+    private static final int BUFFER_SIZE = 1 << 16;
+
     // The map of this model. [cite: 179-180]
     HashMap<String, List> CharDataMap;
     
@@ -10,10 +26,47 @@ public class LanguageModel {
     int windowLength;
     
     // The random number generator used by this model. [cite: 255]
-    private Random randomGenerator;
+    // A java.util.Random, unless another generator was given to the constructor.
+    private RandomGenerator randomGenerator;
+
+    // The seed of the random number generator, if seeded is true
+    int seed;
+    boolean seeded;
+
+    // An index of CharDataMap, which looks a window up without building a String for it,
+    // and the map that it indexes (see lookup())
+    private volatile WindowIndex<List> index;
+    private HashMap<String, List> indexedMap;
+
+    // The lists of CharDataMap whose counts changed since their probabilities were computed
+    private ArrayList<List> changedLists = new ArrayList<List>();
+
+    // How the next character of a window is drawn
+    private SamplingMode samplingMode = SamplingMode.LINEAR;
+
+    // The store that keeps the windows of this model instead of CharDataMap,
+    // or null if the windows are kept in CharDataMap
+    private WindowStore store;
+
+    // True if the probabilities of a window are computed the first time that a character
+    // is drawn from it, instead of at the end of training
+    private boolean lazyProbabilities;
+
+    // The metrics that this model reports to, or null if it measures nothing
+    private ModelMetrics metrics;
+
+    // True if training learns every character of the input, including the whitespace
+    // at its end, instead of ignoring that whitespace like the original train()
+    private boolean exactIngestion;
+
+    // The last characters given to update(), which the next update() continues from,
+    // or null if the next update() starts a new document
+    private WindowKey updateWindow;
 
     public LanguageModel(int windowLength, int seed) {
         this.windowLength = windowLength;
+        this.seed = seed;
+        this.seeded = true;
         randomGenerator = new Random(seed);
         CharDataMap = new HashMap<String, List>();
     }
@@ -24,39 +77,465 @@ public class LanguageModel {
         CharDataMap = new HashMap<String, List>();
     }
 
+    /** Constructs a model that draws characters with the given random number generator,
+     *  for example a SplittableRandom, or RandomGenerator.of("L64X128MixRandom"). */
+    public LanguageModel(int windowLength, RandomGenerator randomGenerator) {
+        this(windowLength);
+        this.randomGenerator = randomGenerator;
+    }
+
+    /** Returns a new random number generator of the given algorithm (a name known to
+     *  RandomGeneratorFactory, such as "Xoshiro256PlusPlus"), seeded with the given seed.
+     *  The algorithm "Random" returns a java.util.Random, which draws the same numbers
+     *  as the generator of new LanguageModel(windowLength, seed). */
+    public static RandomGenerator randomGenerator(String algorithm, long seed) {
+        if (algorithm.equals("Random")) {
+            return new Random(seed);
+        }
+        return RandomGeneratorFactory.of(algorithm).create(seed);
+    }
+
+    /** Constructs a model whose windows are kept in the given store, instead of CharDataMap.
+     *  Throws an IllegalArgumentException if the store is for windows of another length. */
+    public LanguageModel(int windowLength, int seed, WindowStore store) {
+        this(windowLength, seed);
+        if (store.windowLength() != windowLength) {
+            throw new IllegalArgumentException("The store has windows of length "
+                                               + store.windowLength() + ", not " + windowLength);
+        }
+        this.store = store;
+    }
+
+    /** Returns a model with the given window length and seed, trained on the given corpus.
+     *  If a DenseWindowTable for the alphabet of the corpus fits in the given memory budget
+     *  (in bytes), the windows are kept in it, so that training and generation do no hashing;
+     *  otherwise they are kept in CharDataMap. The alphabet of a DenseWindowTable is fixed:
+     *  such a model can only learn texts whose characters are all in the corpus. */
+    public static LanguageModel trained(String fileName, int windowLength, int seed, long denseBudget) {
+        DenseWindowTable table = DenseWindowTable.forCorpus(fileName, windowLength, denseBudget);
+        LanguageModel model = (table != null) ? new LanguageModel(windowLength, seed, table)
+                                              : new LanguageModel(windowLength, seed);
+        model.trainMapped(fileName);
+        return model;
+    }
+
+    /** Returns a model with the given window length and seed, trained approximately on the
+     *  given corpus: the corpus is counted in the given SketchStore, whose memory is fixed
+     *  whatever the size of the corpus, and the windows that the store tracked are then
+     *  materialized into the CharDataMap of the model, with their estimated counts.
+     *  The store is left as it was after training, to report its error bound. */
+    public static LanguageModel trainedApproximately(String fileName, int windowLength, int seed,
+                                                     SketchStore sketch) {
+        LanguageModel counting = new LanguageModel(windowLength, seed, sketch);
+        counting.trainMapped(fileName);
+        LanguageModel model = new LanguageModel(windowLength, seed);
+        sketch.materialize(model.CharDataMap);
+        model.computeProbabilities();
+        return model;
+    }
+
+    /** Sets how this model draws the next character of a window.
+     *  Takes effect for the lists whose probabilities are calculated afterwards,
+     *  so it should be set before training. */
+    public void setSamplingMode(SamplingMode samplingMode) {
+        this.samplingMode = samplingMode;
+    }
+
+    /** Sets whether this model computes the probabilities of a window the first time that
+     *  a character is drawn from it (lazy), instead of at the end of training (eager, the default). */
+    public void setLazyProbabilities(boolean lazyProbabilities) {
+        this.lazyProbabilities = lazyProbabilities;
+    }
+
+    /** Sets whether training learns every character of the corpus (exact), or ignores the
+     *  whitespace at its very end, like the original train() did (the default). */
+    public void setExactIngestion(boolean exactIngestion) {
+        this.exactIngestion = exactIngestion;
+    }
+
+    /** Sets the metrics that this model reports to, such as a MetricsRecorder or JfrMetrics,
+     *  or null (the default) to measure nothing. */
+    public void setMetrics(ModelMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /** Computes now the probabilities of every window that was not sampled since it
+     *  changed, so that no later draw has to compute them. Must not run while texts
+     *  are generated in other threads. */
+    public void computeProbabilities() {
+        if (store != null) {
+            return;
+        }
+        for (List probs : CharDataMap.values()) {
+            if (probs.changed) {
+                calculateProbabilities(probs);
+            }
+        }
+    }
+
     /** Builds a language model from the corpus. [cite: 147-154] */
     public void train(String fileName) {
-        String window = "";
+        checkAlphabet(fileName);
+        long start = System.nanoTime();
+        long characters = 0;
+        WindowKey window = new WindowKey(windowLength);
         char c;
         In in = new In(fileName);
 
         // Reads just enough characters to form the first window. [cite: 380-381]
         for (int i = 0; i < windowLength; i++) {
-            if (!in.isEmpty()) {
-                window += in.readChar();
+            if (hasMoreInput(in)) {
+                fill(window, in.readChar());
+                characters++;
             }
         }
 
-        while (!in.isEmpty()) {
+        while (hasMoreInput(in)) {
             c = in.readChar();
-            List probs = CharDataMap.get(window);
-            
-            if (probs == null) {
-                probs = new List();
-                CharDataMap.put(window, probs);
+            learn(window, c);
+            characters++;
+        }
+
+        finishTraining(characters, start);
+    }
+
+    // Throws an IllegalArgumentException if the store of this model is a DenseWindowTable
+    // and the given file has a character that is not in its alphabet, so that training
+    // rejects the file before it counts any of it, like update(text) does.
+    private void checkAlphabet(String fileName) {
+        if (!(store instanceof DenseWindowTable)) {
+            return;
+        }
+        char[] alphabet;
+        try {
+            alphabet = DenseWindowTable.alphabetOf(fileName);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not read " + fileName, e);
+        }
+        int unknown = ((DenseWindowTable) store).indexOfUnknown(CharBuffer.wrap(alphabet));
+        if (unknown != -1) {
+            throw new IllegalArgumentException("The character '" + alphabet[unknown] + "' of " + fileName
+                                               + " is not in the alphabet of the model");
+        }
+    }
+
+    // Checks if training has more characters to read from the given input:
+    // any character in exact mode, a non-whitespace character ahead otherwise.
+    private boolean hasMoreInput(In in) {
+        return exactIngestion ? in.hasNextChar() : !in.isEmpty();
+    }
+
+    /** Builds a language model from the corpus, like train(fileName), but reads the
+     *  file through memory-mapped buffers instead of In. Builds exactly the same model. */
+    public void trainMapped(String fileName) {
+        checkAlphabet(fileName);
+        try (MappedCorpus in = new MappedCorpus(fileName)) {
+            train(in);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not read " + fileName, e);
+        }
+    }
+
+    /** Builds a language model from the corpus, like train(fileName), but counts separate
+     *  parts of the corpus with the given number of threads, and merges their counts.
+     *  Builds exactly the same model. The whole corpus is read into memory first.
+     *  Only a model whose windows are kept in CharDataMap can be trained in parallel. */
+    public void trainParallel(String fileName, int parallelism) {
+        if (store != null) {
+            throw new UnsupportedOperationException("Cannot train in parallel a model whose windows are in a store");
+        }
+        long start = System.nanoTime();
+        char[] text;
+        try {
+            text = MappedCorpus.readAll(fileName);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not read " + fileName, e);
+        }
+        // Like train(fileName), ignores the whitespace at the end of the corpus
+        int length = text.length;
+        while (!exactIngestion && length > 0 && Character.isWhitespace(text[length - 1])) {
+            length--;
+        }
+        ShardCounter.merge(CharDataMap, ShardCounter.count(text, length, windowLength, parallelism));
+        for (List probs : CharDataMap.values()) {
+            if (probs.changed) {
+                changedLists.add(probs);
             }
+        }
+        finishTraining(length, start);
+    }
 
-            probs.update(c);
-            window = window.substring(1) + c;
+    /** Saves this model to the given file, in the binary format of ModelSnapshot.
+     *  Only a model whose windows are kept in CharDataMap can be saved. */
+    public void save(String fileName) {
+        if (store != null) {
+            throw new UnsupportedOperationException("Cannot save a model whose windows are in a store");
         }
+        try {
+            ModelSnapshot.save(this, fileName);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not write " + fileName, e);
+        }
+    }
+
+    /** Saves this model to the given file, in the format of MappedModel, so that it can be
+     *  served read-only from the file: new LanguageModel(windowLength, seed, new MappedModel(fileName)).
+     *  Only a model whose windows are kept in CharDataMap can be saved. */
+    public void saveMapped(String fileName) {
+        if (store != null) {
+            throw new UnsupportedOperationException("Cannot save a model whose windows are in a store");
+        }
+        computeProbabilities();
+        try {
+            MappedModel.write(this, fileName);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not write " + fileName, e);
+        }
+    }
 
+    /** Prunes the windows of this model into a read-only CompactModel (see its pruning
+     *  rules), and returns the sizes of the model before and after. */
+    public CompactionReport compact(int minCount, int maxSuccessors) {
+        if (store != null) {
+            throw new UnsupportedOperationException("Cannot compact a model whose windows are in a store");
+        }
+        CompactModel compacted = new CompactModel(windowLength, CharDataMap, minCount, maxSuccessors);
+        long entries = 0;
         for (List probs : CharDataMap.values()) {
-            calculateProbabilities(probs);
+            entries += probs.getSize();
+        }
+        CompactionReport report = new CompactionReport(CharDataMap.size(), entries,
+                CompactModel.estimateBytes(CharDataMap), compacted.size(), compacted.entries(),
+                compacted.sizeInBytes());
+        store = compacted;
+        CharDataMap = new HashMap<String, List>();
+        changedLists.clear();
+        return report;
+    }
+
+    /** Loads a model that was saved with save(fileName). The loaded model has the same
+     *  windows, counters, probabilities and seed as the saved one. */
+    public static LanguageModel load(String fileName) {
+        try {
+            return ModelSnapshot.load(fileName);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not read " + fileName, e);
+        }
+    }
+
+    /** Adds every character of the given text to the corpus of this model, as the
+     *  continuation of the text of the previous update, unless startDocument() was called. */
+    public void update(String text) {
+        if (store instanceof DenseWindowTable) {
+            int unknown = ((DenseWindowTable) store).indexOfUnknown(text);
+            if (unknown != -1) {
+                throw new IllegalArgumentException("The character '" + text.charAt(unknown) + "' at index "
+                                                   + unknown + " is not in the alphabet of the model");
+            }
+        }
+        try {
+            // A buffer the size of the text, instead of the one that train(Reader) allocates
+            train(new StringReader(text), Math.min(text.length() + 1, BUFFER_SIZE), true, updateWindow());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Adds the characters of the given reader to the corpus of this model, like update(text). */
+    public void update(Reader in) throws IOException {
+        if (store instanceof DenseWindowTable) {
+            // Reads the whole text first, so that it is checked before any of it is counted
+            StringBuilder text = new StringBuilder();
+            char[] buffer = new char[1 << 10];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                text.append(buffer, 0, n);
+            }
+            update(text.toString());
+            return;
+        }
+        train(in, BUFFER_SIZE, true, updateWindow());
+    }
+
+    /** Makes the next update() start a new document, instead of continuing the text of the
+     *  previous one: its first characters are not learned after the end of that text. */
+    public void startDocument() {
+        updateWindow = null;
+    }
+
+    // Returns the window that the next update() starts from: the one that the previous
+    // update ended with, or a new one for a new document, or for every update of a model
+    // that several threads may update at the same time.
+    private WindowKey updateWindow() {
+        if (store instanceof ConcurrentWindowStore) {
+            return new WindowKey(windowLength);
+        }
+        if (updateWindow == null) {
+            updateWindow = new WindowKey(windowLength);
+        }
+        return updateWindow;
+    }
+
+    /** Builds a language model from the characters of the given reader.
+     *  Like train(fileName), ignores the whitespace at the very end of the input,
+     *  unless in exact mode. */
+    void train(Reader in) throws IOException {
+        train(in, BUFFER_SIZE, exactIngestion, new WindowKey(windowLength));
+    }
+
+    // Builds a language model from the characters of the given reader, read into a
+    // buffer of the given initial size, and learned after the given window. Ignores the
+    // whitespace at the very end of the input, unless exact is true.
+    private void train(Reader in, int bufferSize, boolean exact, WindowKey window) throws IOException {
+        long start = System.nanoTime();
+        long characters = 0;
+        char[] buffer = new char[bufferSize];
+        // The number of characters in the buffer that were read but not used yet
+        int length = 0;
+        int n;
+        while ((n = in.read(buffer, length, buffer.length - length)) != -1) {
+            // The characters held back so far are whitespace, and are not scanned again
+            int held = length;
+            length += n;
+            // Holds back the whitespace at the end of the buffer, until the next
+            // non-whitespace character shows that it is not the end of the input
+            int end = length;
+            if (!exact) {
+                while (end > held && Character.isWhitespace(buffer[end - 1])) {
+                    end--;
+                }
+                if (end == held) {
+                    end = 0;
+                }
+            }
+            for (int i = 0; i < end; i++) {
+                if (window.isFull()) {
+                    learn(window, buffer[i]);
+                } else {
+                    fill(window, buffer[i]);
+                }
+            }
+            characters += end;
+            length -= end;
+            System.arraycopy(buffer, end, buffer, 0, length);
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+            }
+        }
+
+        finishTraining(characters, start);
+    }
+
+    // Computes the probabilities of the windows whose counts changed, and reports a training
+    // that read the given number of characters and started at the given time, if this model
+    // has metrics. Only the lengths of the lists that changed are reported, so that the cost
+    // stays proportional to the text that was read, not to the size of the model.
+    private void finishTraining(long characters, long start) {
+        calculateProbabilities();
+        if (metrics != null) {
+            int windows = (store != null) ? store.size() : CharDataMap.size();
+            metrics.trained(characters, System.nanoTime() - start, windows);
+            for (List probs : changedLists) {
+                metrics.changedListLength(probs.getSize());
+            }
+        }
+        changedLists.clear();
+    }
+
+    // Appends c to a window that is not full yet. A store that learns short windows also
+    // counts c after the characters before it, like learn() does after a full window.
+    private void fill(WindowKey window, char c) {
+        if (learnsShortWindows()) {
+            learn(window, c);
+        } else {
+            window.append(c);
+        }
+    }
+
+    // Checks if the store of this model learns windows shorter than the window length,
+    // so that the model can also generate from a shorter initial text.
+    boolean learnsShortWindows() {
+        return store != null && store.learnsShortWindows();
+    }
+
+    // Returns the list of the given window in CharDataMap, or null if there is none.
+    // Looks the window up in an index of CharDataMap by its hash code and characters, so
+    // that no String is built for it. The index is built again when CharDataMap was
+    // replaced, or got windows that were not added through it (from ShardCounter.merge).
+    private List lookup(CharSequence window) {
+        WindowIndex<List> current = index;
+        if (current == null || indexedMap != CharDataMap || current.size() != CharDataMap.size()) {
+            current = reindex();
+        }
+        return current.get(window);
+    }
+
+    // Builds the index of CharDataMap again, unless another thread that generates
+    // from this model has just done it.
+    private synchronized WindowIndex<List> reindex() {
+        if (index == null || indexedMap != CharDataMap || index.size() != CharDataMap.size()) {
+            WindowIndex<List> rebuilt = new WindowIndex<List>();
+            for (Map.Entry<String, List> entry : CharDataMap.entrySet()) {
+                rebuilt.put(entry.getKey(), entry.getValue());
+            }
+            indexedMap = CharDataMap;
+            // Last, so that a thread that sees the new index sees the map that it indexes
+            index = rebuilt;
+        }
+        return index;
+    }
+
+    // Counts one occurrence of c right after the given window, and slides the window
+    // over c. Looks up the map with the window itself, so that no String is built,
+    // except for the key of a window that is seen for the first time.
+    private void learn(WindowKey window, char c) {
+        if (store != null) {
+            store.update(window, c);
+            window.append(c);
+            return;
+        }
+        List probs = lookup(window);
+        if (probs == null) {
+            probs = new List();
+            String key = window.toString();
+            CharDataMap.put(key, probs);
+            index.put(key, probs);
+        }
+        if (metrics != null) {
+            int index = probs.indexOf(c);
+            metrics.listUpdated((index == -1) ? probs.getSize() : index + 1);
+        }
+        if (!probs.changed) {
+            changedLists.add(probs);
+        }
+        probs.update(c);
+        window.append(c);
+    }
+
+    // Computes the probabilities of the windows whose counts changed since the last time,
+    // or, in lazy mode, leaves them to be computed when they are sampled.
+    // A store computes the probabilities of its windows itself.
+    // The changed lists are cleared by finishTraining().
+    private void calculateProbabilities() {
+        if (store != null) {
+            store.calculateProbabilities();
+            return;
+        }
+        if (!lazyProbabilities) {
+            for (List probs : changedLists) {
+                calculateProbabilities(probs);
+            }
         }
     }
 
     /** Computes and sets p and cp fields. [cite: 117-123] */
     void calculateProbabilities(List probs) {               
+        if (samplingMode == SamplingMode.COUNTS) {
+            // Draws from the counters, so no probability is needed
+            probs.sampler = new CountSampler(probs);
+            probs.changed = false;
+            return;
+        }
         ListIterator it = probs.listIterator(0);
         if (it == null) return;
 
@@ -81,55 +560,173 @@ public class LanguageModel {
         if (last != null) {
             last.cp = 1.0;
         }
+
+        if (samplingMode == SamplingMode.BINARY_SEARCH) {
+            probs.sampler = new CumulativeSampler(probs);
+        } else if (samplingMode == SamplingMode.ALIAS) {
+            probs.sampler = new AliasSampler(probs);
+        }
+        probs.changed = false;
     }
 
     /** Returns a random character using Monte Carlo technique. [cite: 128-144] */
     char getRandomChar(List probs) {
-        double r = randomGenerator.nextDouble();
+        return getRandomChar(probs, randomGenerator);
+    }
+
+    // Returns a character of the given list, drawn with the given random number generator.
+    private char getRandomChar(List probs, RandomGenerator random) {
+        if (lazyProbabilities || probs.changed) {
+            // The list may not have been sampled since it changed (in lazy mode). The lock
+            // of the list makes threads that draw from it at the same time compute its
+            // probabilities once, and see them once they are computed.
+            synchronized (probs) {
+                if (probs.changed) {
+                    calculateProbabilities(probs);
+                }
+            }
+        }
+        if (probs.sampler != null) {
+            return probs.sampler.sample(random);
+        }
+        double r = random.nextDouble();
         ListIterator it = probs.listIterator(0);
 
         CharData cd = null;
+        int depth = 0;
         while (it.hasNext()) {
             cd = it.next();
+            depth++;
             if (cd.cp > r) {
-                return cd.chr;
+                break;
             }
         }
+        if (metrics != null) {
+            metrics.charDrawn(depth);
+        }
         return cd.chr;
     }
 
     /** Generates a random text. [cite: 204-211] */
     public String generate(String initialText, int textLength) {
-        if (initialText.length() < windowLength) {
+        return generate(initialText, textLength, randomGenerator);
+    }
+
+    /** Generates a random text, like generate(initialText, textLength), but draws the characters
+     *  with the given random number generator instead of the generator of this model.
+     *  With new Random(seed), returns what the first generate() of a new LanguageModel with
+     *  this seed would return. Calls with separate generators can run in parallel, as long as
+     *  the model is not trained at the same time. */
+    public String generate(String initialText, int textLength, RandomGenerator random) {
+        if (initialText.length() < windowLength && !learnsShortWindows()) {
             return initialText;
         }
+        long start = (metrics != null) ? System.nanoTime() : 0;
+        boolean windowMissing = false;
 
         StringBuilder generated = new StringBuilder(initialText);
         // תיקון: מייצר textLength תווים נוספים מעבר לטקסט ההתחלתי
         int targetLength = initialText.length() + textLength;
 
+        WindowKey window = new WindowKey(windowLength, initialText);
+
         while (generated.length() < targetLength) {
-            String window = generated.substring(generated.length() - windowLength);
-            List probs = CharDataMap.get(window);
+            int nextChar = getRandomChar(window, random);
             
-            if (probs == null) {
+            if (nextChar == -1) {
+                windowMissing = true;
                 break;
             }
 
-            char nextChar = getRandomChar(probs);
-            generated.append(nextChar);
+            generated.append((char) nextChar);
+            window.append((char) nextChar);
         }
 
+        if (metrics != null) {
+            metrics.generated(generated.length() - initialText.length(), System.nanoTime() - start, windowMissing);
+        }
         return generated.toString();
     }
 
+    // Returns a character that follows the given window, drawn with the given
+    // random number generator, or -1 if the window was never seen.
+    int getRandomChar(CharSequence window, RandomGenerator random) {
+        if (store != null) {
+            return store.getRandomChar(window, random.nextDouble());
+        }
+        List probs = lookup(window);
+        if (probs == null) {
+            return -1;
+        }
+        return getRandomChar(probs, random);
+    }
+
+    /** Generates a random text, like generate(initialText, textLength), and writes it to the
+     *  given writer as it is generated, in chunks of chunkSize characters. The text is never
+     *  held in memory, so it can be of any length. Returns the number of characters written.
+     *  Throws an IllegalArgumentException if chunkSize is less than 1. */
+    public long generate(String initialText, long textLength, Writer out, int chunkSize) throws IOException {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("The chunk size must be positive: " + chunkSize);
+        }
+        long start = (metrics != null) ? System.nanoTime() : 0;
+        TextGenerator generator = new TextGenerator(this, initialText, textLength, randomGenerator);
+        char[] chunk = new char[chunkSize];
+        long written = 0;
+        int n;
+        while ((n = generator.read(chunk, 0, chunkSize)) != -1) {
+            out.write(chunk, 0, n);
+            written += n;
+        }
+        out.flush();
+        if (metrics != null) {
+            long generated = Math.max(0, written - initialText.length());
+            boolean windowMissing = (initialText.length() >= windowLength || learnsShortWindows())
+                                    && generated < textLength;
+            metrics.generated(generated, System.nanoTime() - start, windowMissing);
+        }
+        return written;
+    }
+
     public String toString() {
-        StringBuilder str = new StringBuilder();
-        for (String key : CharDataMap.keySet()) {
-            List keyProbs = CharDataMap.get(key);
-            str.append(key + " : " + keyProbs + "\n");
+        return WindowStore.toString(this::appendTo);
+    }
+
+    /** Appends the textual representation of this model, the text of toString(), to the
+     *  given output, one window at a time, in time proportional to the size of the model. */
+    public void appendTo(Appendable out) throws IOException {
+        if (store != null) {
+            store.appendTo(out);
+            return;
+        }
+        computeProbabilities();
+        for (Map.Entry<String, List> entry : CharDataMap.entrySet()) {
+            List keyProbs = entry.getValue();
+            out.append(entry.getKey()).append(" : ");
+            // The lists of the COUNTS mode have no probabilities: their sampler renders them
+            if (keyProbs.sampler instanceof CountSampler) {
+                ((CountSampler) keyProbs.sampler).appendTo(out);
+            } else {
+                keyProbs.appendTo(out);
+            }
+            out.append('\n');
+        }
+    }
+
+    /** Writes the textual representation of this model to the given writer, and flushes it.
+     *  The text is never held in memory as a whole. */
+    public void writeTo(Writer out) throws IOException {
+        appendTo(out);
+        out.flush();
+    }
+
+    /** Writes the textual representation of this model to the given file, in UTF-8. */
+    public void writeTo(String fileName) {
+        try (Writer out = Files.newBufferedWriter(Paths.get(fileName), StandardCharsets.UTF_8)) {
+            writeTo(out);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not write " + fileName, e);
         }
-        return str.toString();
     }
 
     public static void main(String[] args) {
@@ -0,0 +1,646 @@
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.random.RandomGenerator;
+
+/** Measures the performance of the language model: training throughput, the cost of
+ *  List operations, probability computation, character drawing and text generation.
+ *  Each benchmark is warmed up, then measured over several rounds. For each one, prints
+ *  the time per operation, the throughput, the bytes allocated per operation, and the
+ *  number of garbage collections, so that regressions in speed or allocation are visible.
+ *  Usage: javac *.java; java LanguageModelBenchmark [benchmark | all]
+ *  (run from the folder of the corpus files). */
+public class LanguageModelBenchmark {
+
+    // The corpora that are trained on
+    private static final String[] CORPORA = {"shakespeareinlove.txt", "originofspecies.txt"};
+
+    // The number of warmup and measured rounds of each benchmark
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int ROUNDS = 5;
+
+    // Each round runs the operation for at least this long
+    private static final long ROUND_NANOS = 500_000_000L;
+
+    // Receives the results of the operations, so that the JIT cannot drop them
+    static volatile Object sink;
+
+    /** An operation to measure. */
+    interface Operation {
+        Object run();
+    }
+
+    public static void main(String[] args) {
+        String name = (args.length > 0) ? args[0] : "all";
+        switch (name) {
+            case "train":
+                benchmarkTrain();
+                break;
+            case "list":
+                benchmarkList();
+                break;
+            case "calculateProbabilities":
+                benchmarkCalculateProbabilities();
+                break;
+            case "getRandomChar":
+                benchmarkGetRandomChar();
+                break;
+            case "generate":
+                benchmarkGenerate();
+                break;
+            case "randomGenerators":
+                benchmarkRandomGenerators();
+                break;
+            case "memory":
+                benchmarkMemory();
+                break;
+            case "lazyProbabilities":
+                benchmarkLazyProbabilities();
+                break;
+            case "metrics":
+                benchmarkMetrics();
+                break;
+            case "in":
+                benchmarkIn();
+                break;
+            case "whitespace":
+                benchmarkWhitespace();
+                break;
+            case "dump":
+                benchmarkDump();
+                break;
+            case "concurrentTraining":
+                benchmarkConcurrentTraining();
+                break;
+            case "parallelTraining":
+                benchmarkParallelTraining();
+                break;
+            case "dense":
+                benchmarkDense();
+                break;
+            case "compact":
+                benchmarkCompact();
+                break;
+            case "sketch":
+                benchmarkSketch();
+                break;
+            case "all":
+                benchmarkTrain();
+                benchmarkList();
+                benchmarkCalculateProbabilities();
+                benchmarkGetRandomChar();
+                benchmarkGenerate();
+                benchmarkRandomGenerators();
+                benchmarkMemory();
+                benchmarkLazyProbabilities();
+                benchmarkMetrics();
+                benchmarkIn();
+                benchmarkWhitespace();
+                benchmarkDump();
+                benchmarkConcurrentTraining();
+                benchmarkParallelTraining();
+                benchmarkDense();
+                benchmarkCompact();
+                benchmarkSketch();
+                break;
+            default:
+                System.out.println("Unknown benchmark: " + name);
+                break;
+        }
+    }
+
+    // Training throughput in MB/s, for each corpus, window length and way of reading the corpus.
+    static void benchmarkTrain() {
+        int[] windowLengths = {2, 4, 7};
+        for (String fileName : CORPORA) {
+            double megabytes = new File(fileName).length() / 1e6;
+            for (int windowLength : windowLengths) {
+                measure("train " + fileName + " w=" + windowLength, megabytes, "MB", () -> {
+                    LanguageModel lm = new LanguageModel(windowLength, 20);
+                    lm.train(fileName);
+                    return lm;
+                });
+                measure("trainMapped " + fileName + " w=" + windowLength, megabytes, "MB", () -> {
+                    LanguageModel lm = new LanguageModel(windowLength, 20);
+                    lm.trainMapped(fileName);
+                    return lm;
+                });
+            }
+        }
+    }
+
+    // The cost of List.update and List.indexOf as the list gets longer, against CharDataArray.
+    static void benchmarkList() {
+        int[] lengths = {4, 16, 64, 256};
+        for (int length : lengths) {
+            // Updates all the characters of the list, so the average scan is half the list
+            List list = new List();
+            CharDataArray array = new CharDataArray();
+            for (int i = 0; i < length; i++) {
+                list.addFirst((char) ('!' + i));
+                array.addFirst((char) ('!' + i));
+            }
+            measure("List.update length=" + length, length, "update", () -> {
+                for (int i = 0; i < length; i++) {
+                    list.update((char) ('!' + i));
+                }
+                return list;
+            });
+            measure("List.indexOf length=" + length, length, "indexOf", () -> {
+                int sum = 0;
+                for (int i = 0; i < length; i++) {
+                    sum += list.indexOf((char) ('!' + i));
+                }
+                return sum;
+            });
+            measure("CharDataArray.update length=" + length, length, "update", () -> {
+                for (int i = 0; i < length; i++) {
+                    array.update((char) ('!' + i));
+                }
+                return array;
+            });
+        }
+    }
+
+    // The time to compute the probabilities of every window of a trained model.
+    static void benchmarkCalculateProbabilities() {
+        LanguageModel lm = trained(7);
+        measure("calculateProbabilities w=7, " + lm.CharDataMap.size() + " windows",
+                lm.CharDataMap.size(), "window", () -> {
+            for (List probs : lm.CharDataMap.values()) {
+                lm.calculateProbabilities(probs);
+            }
+            return lm;
+        });
+    }
+
+    // The latency of getRandomChar, for short and long lists, with each sampling mode.
+    static void benchmarkGetRandomChar() {
+        for (SamplingMode mode : SamplingMode.values()) {
+            LanguageModel lm = new LanguageModel(1, 20);
+            lm.setSamplingMode(mode);
+            lm.trainMapped(CORPORA[1]);
+            // The window followed by the most characters, and a typical one
+            List longest = null;
+            for (List probs : lm.CharDataMap.values()) {
+                if (longest == null || probs.getSize() > longest.getSize()) {
+                    longest = probs;
+                }
+            }
+            List longList = longest;
+            List shortList = lm.CharDataMap.get("q");
+            measure("getRandomChar " + mode + " length=" + longList.getSize(), 1000, "char", () -> {
+                int sum = 0;
+                for (int i = 0; i < 1000; i++) {
+                    sum += lm.getRandomChar(longList);
+                }
+                return sum;
+            });
+            measure("getRandomChar " + mode + " length=" + shortList.getSize(), 1000, "char", () -> {
+                int sum = 0;
+                for (int i = 0; i < 1000; i++) {
+                    sum += lm.getRandomChar(shortList);
+                }
+                return sum;
+            });
+        }
+    }
+
+    // Generation throughput in characters per second.
+    static void benchmarkGenerate() {
+        int[] windowLengths = {2, 7};
+        for (int windowLength : windowLengths) {
+            LanguageModel lm = trained(windowLength);
+            String initialText = "Natural selection".substring(0, windowLength);
+            measure("generate w=" + windowLength, 100_000, "char", () -> lm.generate(initialText, 100_000));
+        }
+    }
+
+    // Generation throughput with each random number generator algorithm.
+    static void benchmarkRandomGenerators() {
+        String[] algorithms = {"Random", "SplittableRandom", "L64X128MixRandom", "Xoshiro256PlusPlus"};
+        LanguageModel lm = trained(2);
+        for (String algorithm : algorithms) {
+            RandomGenerator random = LanguageModel.randomGenerator(algorithm, 20);
+            measure("generate w=2 " + algorithm, 100_000, "char", () -> lm.generate("Na", 100_000, random));
+        }
+    }
+
+    // The heap kept by a model trained on the larger corpus, with each way of storing the windows.
+    static void benchmarkMemory() {
+        int[] windowLengths = {4, 7};
+        for (int windowLength : windowLengths) {
+            printRetained("CharDataMap w=" + windowLength, () -> trained(windowLength));
+            printRetained("WindowTable w=" + windowLength, () -> trained(windowLength, new WindowTable(windowLength)));
+            printRetained("ContextTrie w=" + windowLength, () -> trained(windowLength, new ContextTrie(windowLength)));
+            printRetained("BackoffTrie w=" + windowLength, () -> trained(windowLength, new BackoffTrie(windowLength)));
+            printRetained("CharDataMap orders 1.." + windowLength, () -> {
+                LanguageModel[] models = new LanguageModel[windowLength];
+                for (int order = 1; order <= windowLength; order++) {
+                    models[order - 1] = trained(order);
+                }
+                return models;
+            });
+        }
+    }
+
+    // The time from the start of training to the first generated text, with eager and lazy
+    // probabilities, for each sampling mode, and the time to generate once the model is trained.
+    static void benchmarkLazyProbabilities() {
+        for (SamplingMode mode : SamplingMode.values()) {
+            for (boolean lazy : new boolean[] {false, true}) {
+                String label = mode + (lazy ? " lazy" : " eager");
+                measure("train + generate 1000 w=7 " + label, 1, "model", () -> {
+                    LanguageModel lm = new LanguageModel(7, 20);
+                    lm.setSamplingMode(mode);
+                    lm.setLazyProbabilities(lazy);
+                    lm.trainMapped(CORPORA[1]);
+                    return lm.generate("Natural", 1000);
+                });
+                LanguageModel lm = new LanguageModel(7, 20);
+                lm.setSamplingMode(mode);
+                lm.setLazyProbabilities(lazy);
+                lm.trainMapped(CORPORA[1]);
+                measure("generate 100000 w=7 " + label, 100_000, "char", () -> lm.generate("Natural", 100_000));
+            }
+        }
+    }
+
+    // The cost of the metrics: training and generation without metrics, and with each kind.
+    static void benchmarkMetrics() {
+        String[] kinds = {"none", "MetricsRecorder", "JfrMetrics"};
+        for (String kind : kinds) {
+            double megabytes = new File(CORPORA[1]).length() / 1e6;
+            measure("trainMapped w=7 metrics=" + kind, megabytes, "MB", () -> {
+                LanguageModel lm = new LanguageModel(7, 20);
+                lm.setMetrics(metrics(kind));
+                lm.trainMapped(CORPORA[1]);
+                return lm;
+            });
+            LanguageModel lm = new LanguageModel(7, 20);
+            lm.setMetrics(metrics(kind));
+            lm.trainMapped(CORPORA[1]);
+            measure("generate w=7 metrics=" + kind, 100_000, "char", () -> lm.generate("Natural", 100_000));
+        }
+    }
+
+    // Returns new metrics of the given kind, or null for "none".
+    private static ModelMetrics metrics(String kind) {
+        switch (kind) {
+            case "MetricsRecorder":
+                return new MetricsRecorder();
+            case "JfrMetrics":
+                return new JfrMetrics();
+            default:
+                return null;
+        }
+    }
+
+    // Reading a corpus one character at a time with In, in char mode and with a scanner.
+    static void benchmarkIn() {
+        for (String fileName : CORPORA) {
+            double megabytes = new File(fileName).length() / 1e6;
+            measure("In char mode " + fileName, megabytes, "MB", () -> readChars(new In(fileName)));
+            measure("In scanner " + fileName, megabytes, "MB", () -> {
+                try {
+                    return readChars(new In(new Scanner(new File(fileName), "UTF-8")));
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        }
+    }
+
+    // Training throughput on synthetic corpora of 1MB, made of words separated by runs of
+    // whitespace of growing length: with a linear end-of-input check, the throughput
+    // does not depend on the length of the runs.
+    static void benchmarkWhitespace() {
+        int[] runLengths = {1, 100, 10_000, 100_000};
+        for (int runLength : runLengths) {
+            File file;
+            try {
+                file = File.createTempFile("whitespace", ".txt");
+                file.deleteOnExit();
+                StringBuilder text = new StringBuilder();
+                while (text.length() < 1_000_000) {
+                    text.append("word");
+                    for (int i = 0; i < runLength; i++) {
+                        text.append((i % 10 == 9) ? '\n' : ' ');
+                    }
+                }
+                Files.writeString(file.toPath(), text);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            double megabytes = file.length() / 1e6;
+            for (boolean exact : new boolean[] {false, true}) {
+                String label = " runs=" + runLength + (exact ? " exact" : " compatible");
+                measure("train w=4" + label, megabytes, "MB", () -> {
+                    LanguageModel lm = new LanguageModel(4, 20);
+                    lm.setExactIngestion(exact);
+                    lm.train(file.getPath());
+                    return lm;
+                });
+                measure("trainMapped w=4" + label, megabytes, "MB", () -> {
+                    LanguageModel lm = new LanguageModel(4, 20);
+                    lm.setExactIngestion(exact);
+                    lm.trainMapped(file.getPath());
+                    return lm;
+                });
+            }
+        }
+    }
+
+    // The time to dump a trained model as text: to a String, and streamed to a file.
+    static void benchmarkDump() {
+        for (int windowLength : new int[] {2, 7}) {
+            LanguageModel lm = trained(windowLength);
+            int windows = lm.CharDataMap.size();
+            measure("toString w=" + windowLength, windows, "window", () -> lm.toString());
+            measure("writeTo file w=" + windowLength, windows, "window", () -> {
+                try {
+                    File file = File.createTempFile("model", ".txt");
+                    lm.writeTo(file.getPath());
+                    file.delete();
+                    return file;
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        }
+    }
+
+    // Training throughput when producer threads add the documents of the corpus to one
+    // shared model with a ConcurrentWindowStore, against one thread and a plain model.
+    static void benchmarkConcurrentTraining() {
+        String text;
+        try {
+            text = new String(MappedCorpus.readAll(CORPORA[1]));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        ArrayList<String> documents = new ArrayList<String>();
+        for (int i = 0; i < text.length(); i += 10000) {
+            documents.add(text.substring(i, Math.min(text.length(), i + 10000)));
+        }
+        double megabytes = text.length() / 1e6;
+        measure("update w=7 plain model, 1 thread", megabytes, "MB", () -> {
+            LanguageModel lm = new LanguageModel(7, 20);
+            for (String document : documents) {
+                lm.update(document);
+            }
+            return lm;
+        });
+        for (int threads : new int[] {1, 2, 4, 8}) {
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            measure("update w=7 ConcurrentWindowStore, " + threads + " threads", megabytes, "MB", () -> {
+                LanguageModel lm = new LanguageModel(7, 20, new ConcurrentWindowStore(7));
+                ArrayList<Future<?>> futures = new ArrayList<Future<?>>();
+                for (String document : documents) {
+                    futures.add(executor.submit(() -> lm.update(document)));
+                }
+                try {
+                    for (Future<?> future : futures) {
+                        future.get();
+                    }
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+                return lm;
+            });
+            executor.shutdown();
+        }
+    }
+
+    // Training throughput of trainParallel for 1, 2, 4, ... threads up to the number of cores,
+    // and the speedup over 1 thread. The bytes allocated by the worker threads are not counted.
+    static void benchmarkParallelTraining() {
+        double megabytes = new File(CORPORA[1]).length() / 1e6;
+        int cores = Runtime.getRuntime().availableProcessors();
+        double baseline = 0;
+        for (int threads = 1; ; threads = Math.min(2 * threads, cores)) {
+            int parallelism = threads;
+            double nanos = measure("trainParallel w=7, " + threads + " threads", megabytes, "MB", () -> {
+                LanguageModel lm = new LanguageModel(7, 20);
+                lm.trainParallel(CORPORA[1], parallelism);
+                return lm;
+            });
+            if (threads == 1) {
+                baseline = nanos;
+            }
+            System.out.printf("  speedup over 1 thread: %.2f (of %d cores)%n", baseline / nanos, cores);
+            if (threads == cores) {
+                break;
+            }
+        }
+    }
+
+    // Training and generation with short windows, in CharDataMap and in a DenseWindowTable.
+    static void benchmarkDense() {
+        double megabytes = new File(CORPORA[1]).length() / 1e6;
+        for (int windowLength : new int[] {1, 2}) {
+            measure("trainMapped w=" + windowLength + " CharDataMap", megabytes, "MB", () -> trained(windowLength));
+            measure("trainMapped w=" + windowLength + " DenseWindowTable", megabytes, "MB",
+                    () -> LanguageModel.trained(CORPORA[1], windowLength, 20, DenseWindowTable.DEFAULT_BUDGET));
+            String initialText = "Na".substring(0, windowLength);
+            LanguageModel map = trained(windowLength);
+            LanguageModel dense = LanguageModel.trained(CORPORA[1], windowLength, 20, DenseWindowTable.DEFAULT_BUDGET);
+            measure("generate w=" + windowLength + " CharDataMap", 100_000, "char", () -> map.generate(initialText, 100_000));
+            measure("generate w=" + windowLength + " DenseWindowTable", 100_000, "char", () -> dense.generate(initialText, 100_000));
+        }
+    }
+
+    // The heap kept by a model trained on the larger corpus before and after compact(),
+    // with the sizes that compact() reports, and the speed of generation from each.
+    static void benchmarkCompact() {
+        int windowLength = 7;
+        int[][] settings = {{1, Integer.MAX_VALUE}, {2, Integer.MAX_VALUE}, {2, 8}, {3, 4}};
+        printRetained("CharDataMap w=" + windowLength, () -> trained(windowLength));
+        for (int[] setting : settings) {
+            String maxSuccessors = (setting[1] == Integer.MAX_VALUE) ? "MAX" : String.valueOf(setting[1]);
+            String label = "compact(" + setting[0] + ", " + maxSuccessors + ") w=" + windowLength;
+            printRetained(label, () -> {
+                LanguageModel lm = trained(windowLength);
+                lm.compact(setting[0], setting[1]);
+                return lm;
+            });
+            System.out.println("    " + trained(windowLength).compact(setting[0], setting[1]));
+        }
+        LanguageModel map = trained(windowLength);
+        measure("generate w=" + windowLength + " CharDataMap", 100_000, "char", () -> map.generate("Natural", 100_000));
+        LanguageModel compacted = trained(windowLength);
+        compacted.compact(1, Integer.MAX_VALUE);
+        measure("generate w=" + windowLength + " compact(1, MAX)", 100_000, "char",
+                () -> compacted.generate("Natural", 100_000));
+    }
+
+    // Training with a SketchStore of a few budgets, on each corpus: the time to train, and
+    // the error of the estimated counts against the exact counts of a plain model.
+    static void benchmarkSketch() {
+        int windowLength = 7;
+        for (String fileName : CORPORA) {
+            double megabytes = new File(fileName).length() / 1e6;
+            LanguageModel exact = new LanguageModel(windowLength, 20);
+            exact.trainMapped(fileName);
+            System.out.printf("%-55s %14.1f MB (estimate)%n", fileName + " exact w=" + windowLength,
+                              CompactModel.estimateBytes(exact.CharDataMap) / 1e6);
+            measure("trainMapped " + fileName + " exact", megabytes, "MB", () -> {
+                LanguageModel lm = new LanguageModel(windowLength, 20);
+                lm.trainMapped(fileName);
+                return lm;
+            });
+            for (long budget : new long[] {4L << 20, 16L << 20}) {
+                String label = fileName + " sketch " + (budget >> 20) + " MB";
+                measure("trainedApproximately " + label, megabytes, "MB",
+                        () -> LanguageModel.trainedApproximately(fileName, windowLength, 20,
+                                                                 SketchStore.forBudget(windowLength, budget)));
+                SketchStore sketch = SketchStore.forBudget(windowLength, budget);
+                LanguageModel approximate = LanguageModel.trainedApproximately(fileName, windowLength, 20, sketch);
+                printSketchError(label, exact, approximate, sketch);
+            }
+        }
+    }
+
+    // Prints the windows and the share of the corpus kept by an approximate model, and the
+    // error of its counts against the counts of the exact model, with the bound of the sketch.
+    private static void printSketchError(String label, LanguageModel exact, LanguageModel approximate,
+                                         SketchStore sketch) {
+        long covered = 0;
+        long entries = 0;
+        long withinBound = 0;
+        long maxError = 0;
+        long errorSum = 0;
+        for (Map.Entry<String, List> entry : approximate.CharDataMap.entrySet()) {
+            List exactList = exact.CharDataMap.get(entry.getKey());
+            ListIterator it = exactList.listIterator(0);
+            while (it.hasNext()) {
+                covered += it.next().count;
+            }
+            it = entry.getValue().listIterator(0);
+            while (it.hasNext()) {
+                CharData cd = it.next();
+                long error = cd.count - exactList.get(exactList.indexOf(cd.chr)).count;
+                entries++;
+                errorSum += error;
+                maxError = Math.max(maxError, error);
+                withinBound += (error <= sketch.errorBound()) ? 1 : 0;
+            }
+        }
+        System.out.printf("    %s: %d of %d windows, %.1f%% of the corpus, %.1f MB%n", label,
+                          approximate.CharDataMap.size(), exact.CharDataMap.size(),
+                          100.0 * covered / sketch.total(), sketch.sizeInBytes() / 1e6);
+        System.out.printf("    error bound %.1f (confidence %.3f): mean error %.3f, max %d, %.2f%% within the bound%n",
+                          sketch.errorBound(), sketch.confidence(), (double) errorSum / entries, maxError,
+                          100.0 * withinBound / entries);
+    }
+
+    // Reads all the characters of the given input like train does, and returns their sum.
+    private static int readChars(In in) {
+        int sum = 0;
+        while (!in.isEmpty()) {
+            sum += in.readChar();
+        }
+        in.close();
+        return sum;
+    }
+
+    // Returns a model trained on the larger corpus, whose windows are kept in the given store.
+    static LanguageModel trained(int windowLength, WindowStore store) {
+        LanguageModel lm = new LanguageModel(windowLength, 20, store);
+        lm.trainMapped(CORPORA[1]);
+        return lm;
+    }
+
+    // Prints the heap kept by the result of the given operation: the used heap after a
+    // garbage collection while the result is reachable, minus the used heap before it ran.
+    static void printRetained(String label, Operation operation) {
+        long before = usedHeap();
+        sink = operation.run();
+        long retained = usedHeap() - before;
+        sink = null;
+        System.out.printf("%-55s %14.1f MB retained%n", label, retained / 1e6);
+    }
+
+    // Returns the used heap after a few garbage collections.
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    // Returns a model trained on the larger corpus with the given window length.
+    static LanguageModel trained(int windowLength) {
+        LanguageModel lm = new LanguageModel(windowLength, 20);
+        lm.trainMapped(CORPORA[1]);
+        return lm;
+    }
+
+    /** Runs the given operation in warmup rounds, then in measured rounds, and prints
+     *  the mean time per operation, the throughput in units per second (each operation
+     *  processes the given number of units), the bytes allocated per operation,
+     *  and the number of garbage collections during the measured rounds.
+     *  Returns the mean time per operation, in nanoseconds. */
+    static double measure(String label, double unitsPerOperation, String unit, Operation operation) {
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            runRound(operation);
+        }
+        long operations = 0;
+        long nanos = 0;
+        long collections = collectionCount();
+        long allocated = allocatedBytes();
+        for (int round = 0; round < ROUNDS; round++) {
+            long[] result = runRound(operation);
+            operations += result[0];
+            nanos += result[1];
+        }
+        double bytesPerOperation = (double) (allocatedBytes() - allocated) / operations;
+        collections = collectionCount() - collections;
+        double nanosPerOperation = (double) nanos / operations;
+        double unitsPerSecond = unitsPerOperation * 1e9 / nanosPerOperation;
+        System.out.printf("%-55s %14.1f ns/op %14.1f %s/s %14.1f B/op %6d GCs%n",
+                          label, nanosPerOperation, unitsPerSecond, unit, bytesPerOperation, collections);
+        return nanosPerOperation;
+    }
+
+    // Runs the operation for at least ROUND_NANOS. Returns the number of runs and their time.
+    private static long[] runRound(Operation operation) {
+        long operations = 0;
+        long start = System.nanoTime();
+        long time;
+        do {
+            sink = operation.run();
+            operations++;
+            time = System.nanoTime() - start;
+        } while (time < ROUND_NANOS);
+        return new long[] {operations, time};
+    }
+
+    // Returns the number of bytes allocated so far by the current thread, or 0 if unknown.
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    // Returns the number of garbage collections so far.
+    private static long collectionCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, bean.getCollectionCount());
+        }
+        return count;
+    }
+}
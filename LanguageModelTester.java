@@ -1,6 +1,23 @@
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 
 public class LanguageModelTester {
         public static void main(String[] args) {
@@ -19,11 +36,99 @@ public class LanguageModelTester {
             case "generate":
                 result = testGenerate();
                 break;
+            case "trainMapped":
+                result = testTrainMapped();
+                break;
+            case "windowTable":
+                result = testWindowTable();
+                break;
+            case "samplingModes":
+                result = testSamplingModes();
+                break;
+            case "trainParallel":
+                result = testTrainParallel();
+                break;
+            case "update":
+                result = testUpdate();
+                break;
+            case "saveLoad":
+                result = testSaveLoad();
+                break;
+            case "mappedModel":
+                result = testMappedModel();
+                break;
+            case "streamingGenerate":
+                result = testStreamingGenerate();
+                break;
+            case "batchGenerate":
+                result = testBatchGenerate();
+                break;
+            case "backoff":
+                result = testBackoff();
+                break;
+            case "contextTrie":
+                result = testContextTrie();
+                break;
+            case "lazyProbabilities":
+                result = testLazyProbabilities();
+                break;
+            case "countSampling":
+                result = testCountSampling();
+                break;
+            case "metrics":
+                result = testMetrics();
+                break;
+            case "inCharMode":
+                result = testInCharMode();
+                break;
+            case "exactIngestion":
+                result = testExactIngestion();
+                break;
+            case "dump":
+                result = testDump();
+                break;
+            case "concurrentTraining":
+                result = testConcurrentTraining();
+                break;
+            case "denseWindowTable":
+                result = testDenseWindowTable();
+                break;
+            case "compact":
+                result = testCompact();
+                break;
+            case "sketchStore":
+                result = testSketchStore();
+                break;
+            case "charDataArray":
+                result = testCharDataArray();
+                break;
             case "all":
                 result = testCalculateProbabilities();
                 result = result && testGetRandomChar();
                 result = result && testTrain();
                 result = result && testGenerate();
+                result = result && testTrainMapped();
+                result = result && testWindowTable();
+                result = result && testSamplingModes();
+                result = result && testTrainParallel();
+                result = result && testUpdate();
+                result = result && testSaveLoad();
+                result = result && testMappedModel();
+                result = result && testStreamingGenerate();
+                result = result && testBatchGenerate();
+                result = result && testBackoff();
+                result = result && testContextTrie();
+                result = result && testLazyProbabilities();
+                result = result && testCountSampling();
+                result = result && testMetrics();
+                result = result && testInCharMode();
+                result = result && testExactIngestion();
+                result = result && testDump();
+                result = result && testConcurrentTraining();
+                result = result && testDenseWindowTable();
+                result = result && testCompact();
+                result = result && testSketchStore();
+                result = result && testCharDataArray();
                 break;
             default:
                 break;
@@ -166,6 +271,950 @@ public class LanguageModelTester {
         return res;
     }
 
+    // Test method for the trainMapped() method
+    public static boolean testTrainMapped() {
+        boolean result = true;
+        String [] fileNames = {"shakespeareinlove.txt", "originofspecies.txt"};
+        int [] windowLengths = {2, 7};
+        for (int i = 0; i < fileNames.length; i++) {
+            for (int j = 0; j < windowLengths.length; j++) {
+                LanguageModel expected = new LanguageModel(windowLengths[j], 20);
+                expected.train(fileNames[i]);
+                LanguageModel actual = new LanguageModel(windowLengths[j], 20);
+                actual.trainMapped(fileNames[i]);
+                boolean res = actual.toString().equals(expected.toString());
+                if (!res) {
+                    System.out.println("FAIL with file = " + fileNames[i] + ", windowLength = " + windowLengths[j]);
+                }
+                result = result && res;
+            }
+        }
+        return result;
+    }
+
+    // Test method for the trainParallel() method
+    public static boolean testTrainParallel() {
+        boolean result = true;
+        String [] fileNames = {"shakespeareinlove.txt", "originofspecies.txt"};
+        int [] threads = {1, 3, 8};
+        for (int i = 0; i < fileNames.length; i++) {
+            LanguageModel expected = new LanguageModel(4, 20);
+            expected.train(fileNames[i]);
+            for (int j = 0; j < threads.length; j++) {
+                LanguageModel actual = new LanguageModel(4, 20);
+                actual.trainParallel(fileNames[i], threads[j]);
+                boolean res = actual.toString().equals(expected.toString());
+                if (!res) {
+                    System.out.println("FAIL with file = " + fileNames[i] + ", threads = " + threads[j]);
+                }
+                result = result && res;
+            }
+        }
+        // The counts of the shards are merged into CharDataMap, so a store is rejected
+        try {
+            new LanguageModel(4, 20, new WindowTable(4)).trainParallel(fileNames[0], 2);
+            System.out.println("FAIL: a model with a store was trained in parallel");
+            result = false;
+        } catch (UnsupportedOperationException e) {
+            // Expected
+        }
+        return result;
+    }
+
+    // Test method for the update() method
+    public static boolean testUpdate() {
+        LanguageModel languageModel = new LanguageModel(2, 20);
+        languageModel.update("elephant_have_big_ears");
+        languageModel.update("linked_lists_are_fun");
+        languageModel.update("you_cannot_teach_a_man_anything;_you_can_only_help_him_find_it_within_himself");
+        String actual = languageModel.toString();
+        // Computes the probabilities of all the windows again, from scratch
+        for (List probs : languageModel.CharDataMap.values()) {
+            languageModel.calculateProbabilities(probs);
+        }
+        String expected = languageModel.toString();
+        boolean res = actual.equals(expected) && languageModel.CharDataMap.get("li").getSize() == 2;
+        // A stream fed in chunks builds the model of the whole stream, including the windows
+        // that cross a chunk boundary and the whitespace at the end of a chunk
+        String[] chunks = {"to be or ", "not to be", " that is ", "the question "};
+        LanguageModel streamed = new LanguageModel(3, 20);
+        for (String chunk : chunks) {
+            streamed.update(chunk);
+        }
+        LanguageModel whole = new LanguageModel(3, 20);
+        whole.setExactIngestion(true);
+        try {
+            whole.train(new StringReader(String.join("", chunks)));
+        } catch (IOException e) {
+            res = false;
+        }
+        res = res && streamed.toString().equals(whole.toString());
+        // A new document does not continue the previous one
+        streamed.startDocument();
+        streamed.update("xyz");
+        res = res && !streamed.CharDataMap.containsKey("n x") && !streamed.CharDataMap.containsKey("on ");
+        if (!res){
+            System.out.println("Expected: " + expected);
+            System.out.println("Actual: " + actual);
+        }
+        return res;
+    }
+
+    // Test method for the save() and load() methods
+    public static boolean testSaveLoad() {
+        boolean res = true;
+        try {
+            File file = File.createTempFile("model", ".lms");
+            file.deleteOnExit();
+            LanguageModel languageModel = new LanguageModel(7, 20);
+            languageModel.train("originofspecies.txt");
+            languageModel.save(file.getPath());
+            LanguageModel loaded = LanguageModel.load(file.getPath());
+            res = loaded.toString().equals(languageModel.toString());
+            String generatedText = loaded.generate("Natural", 172);
+            String expectedGeneratedText = languageModel.generate("Natural", 172);
+            res = res && generatedText.equals(expectedGeneratedText);
+            // A truncated snapshot is reported as a file that could not be read
+            for (long length : new long[] {file.length() - 1, file.length() / 2, 12}) {
+                try (RandomAccessFile truncated = new RandomAccessFile(file, "rw")) {
+                    truncated.setLength(length);
+                }
+                try {
+                    LanguageModel.load(file.getPath());
+                    res = false;
+                } catch (IllegalArgumentException e) {
+                    res = res && e.getCause() instanceof IOException;
+                }
+            }
+            if (!res){
+                System.out.println("Expected: " + expectedGeneratedText);
+                System.out.println("Actual: " + generatedText);
+            }
+        } catch (Exception e) {
+            System.out.println(e);
+            res = false;
+        }
+        return res;
+    }
+
+    // Test method for a model served from a MappedModel file
+    public static boolean testMappedModel() {
+        boolean res = true;
+        try {
+            File file = File.createTempFile("model", ".lmm");
+            file.deleteOnExit();
+            LanguageModel expected = new LanguageModel(7, 20);
+            expected.train("originofspecies.txt");
+            expected.saveMapped(file.getPath());
+            MappedModel mapped = new MappedModel(file.getPath());
+            res = mapped.size() == expected.CharDataMap.size();
+            for (String key : expected.CharDataMap.keySet()) {
+                res = res && expected.CharDataMap.get(key).toString().equals(mapped.toString(key));
+            }
+            LanguageModel languageModel = new LanguageModel(7, 20, mapped);
+            String generatedText = languageModel.generate("Natural", 172);
+            String expectedGeneratedText = expected.generate("Natural", 172);
+            res = res && generatedText.equals(expectedGeneratedText);
+            // A model with another window length would never find its windows in the file
+            try {
+                new LanguageModel(6, 20, mapped);
+                res = false;
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+            // A header whose number of slots is not a power of 2, or whose hash table does not
+            // fit in the file, is reported as a file that could not be read
+            File corrupted = File.createTempFile("corrupted", ".lmm");
+            corrupted.deleteOnExit();
+            for (int slots : new int[] {0, 3, 1 << 30}) {
+                Files.copy(file.toPath(), corrupted.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                try (RandomAccessFile header = new RandomAccessFile(corrupted, "rw")) {
+                    header.seek(12);
+                    header.writeInt(slots);
+                }
+                try {
+                    new MappedModel(corrupted.getPath());
+                    res = false;
+                } catch (IOException e) {
+                    res = res && e.getMessage().contains(corrupted.getPath());
+                }
+            }
+            if (!res){
+                System.out.println("Expected: " + expectedGeneratedText);
+                System.out.println("Actual: " + generatedText);
+            }
+        } catch (Exception e) {
+            System.out.println(e);
+            res = false;
+        }
+        return res;
+    }
+
+    // Test method for the streaming generate() method
+    public static boolean testStreamingGenerate() {
+        boolean res = true;
+        try {
+            LanguageModel languageModel = new LanguageModel(7, 20);
+            languageModel.train("originofspecies.txt");
+            StringWriter out = new StringWriter();
+            long written = languageModel.generate("Natural", 172, out, 16);
+            String expectedGeneratedText = "Natural selection, how is it possible, generally much changed\n"+
+            "simultaneous rotation, when the importance of Batrachians, 393.\n"+
+            "  Batrachians (frogs, toads, newts) have to modified ";
+            res = stringEqualsNoSpaces(out.toString(), expectedGeneratedText) && written == out.toString().length();
+            // A chunk of no characters would never end the generation
+            for (int chunkSize : new int[] {0, -1}) {
+                try {
+                    languageModel.generate("Natural", 172, new StringWriter(), chunkSize);
+                    res = false;
+                } catch (IllegalArgumentException e) {
+                    // Expected
+                }
+            }
+            if (!res){
+                System.out.println("Expected: " + expectedGeneratedText);
+                System.out.println("Actual: " + out);
+            }
+        } catch (Exception e) {
+            System.out.println(e);
+            res = false;
+        }
+        return res;
+    }
+
+    // Test method for the BatchGenerator class
+    public static boolean testBatchGenerate() {
+        boolean res = true;
+        LanguageModel languageModel = new LanguageModel(7);
+        languageModel.train("originofspecies.txt");
+        GenerationRequest [] requests = new GenerationRequest[200];
+        for (int i = 0; i < requests.length; i++) {
+            requests[i] = new GenerationRequest("Natural", 172, 20 + i % 50);
+        }
+        BatchGenerator generator = new BatchGenerator(languageModel, 4);
+        try {
+            String [] texts = generator.generate(requests);
+            String expectedGeneratedText = "Natural selection, how is it possible, generally much changed\n"+
+            "simultaneous rotation, when the importance of Batrachians, 393.\n"+
+            "  Batrachians (frogs, toads, newts) have to modified ";
+            res = stringEqualsNoSpaces(texts[0], expectedGeneratedText);
+            for (int i = 0; i < requests.length; i++) {
+                String expected = languageModel.generate("Natural", 172, new Random(requests[i].seed));
+                res = res && texts[i].equals(expected);
+            }
+            // Requests with another algorithm are reproducible too
+            GenerationRequest [] splittable = {
+                new GenerationRequest("Natural", 172, 7, "SplittableRandom"),
+                new GenerationRequest("Natural", 172, 7, "SplittableRandom")
+            };
+            texts = generator.generate(splittable);
+            res = res && texts[0].equals(texts[1]) && texts[0].equals(languageModel.generate("Natural", 172,
+                    LanguageModel.randomGenerator("SplittableRandom", 7)));
+        } catch (InterruptedException e) {
+            res = false;
+        } finally {
+            generator.shutdown();
+        }
+        return res;
+    }
+
+    // Test method for a model that backs off to shorter windows
+    public static boolean testBackoff() {
+        BackoffTrie trie = new BackoffTrie(7);
+        LanguageModel languageModel = new LanguageModel(7, 20, trie);
+        languageModel.train("originofspecies.txt");
+        LanguageModel expected = new LanguageModel(7, 20);
+        expected.train("originofspecies.txt");
+        boolean res = true;
+        // Every order-7 context has the same counts as the plain model
+        for (String key : expected.CharDataMap.keySet()) {
+            res = res && expected.CharDataMap.get(key).toString().equals(trie.toString(key));
+        }
+        // As long as all the windows were seen, the text is the same
+        String generatedText = languageModel.generate("Natural", 172);
+        res = res && generatedText.equals(expected.generate("Natural", 172));
+        // An unseen window backs off, so the text never stops early
+        res = res && trie.order("xqzNatu") == 4;
+        res = res && languageModel.generate("xqzqxzq", 1000).length() == 1007;
+        // The first characters of a text are counted after the shorter contexts before them,
+        // and a short initial text backs off like any other window
+        BackoffTrie small = new BackoffTrie(3);
+        LanguageModel smallModel = new LanguageModel(3, 20, small);
+        smallModel.update("abcab");
+        String[][] contexts = {{"", "abcab"}, {"a", "bb"}, {"ab", "c"}, {"b", "c"}, {"c", "a"}};
+        for (String[] context : contexts) {
+            List successors = new List();
+            for (int i = 0; i < context[1].length(); i++) {
+                successors.update(context[1].charAt(i));
+            }
+            smallModel.calculateProbabilities(successors);
+            res = res && successors.toString().equals(small.toString(context[0]));
+        }
+        res = res && smallModel.generate("a", 10).length() == 11 && smallModel.generate("", 5).length() == 5;
+        if (!res){
+            System.out.println("Actual: " + generatedText);
+        }
+        return res;
+    }
+
+    // Test method for a model that computes the probabilities of a window when it is sampled
+    public static boolean testLazyProbabilities() {
+        LanguageModel languageModel = new LanguageModel(7, 20);
+        languageModel.setLazyProbabilities(true);
+        languageModel.train("originofspecies.txt");
+        LanguageModel expected = new LanguageModel(7, 20);
+        expected.train("originofspecies.txt");
+        // No probabilities are computed by training
+        boolean res = true;
+        for (List probs : languageModel.CharDataMap.values()) {
+            res = res && probs.changed;
+        }
+        String generatedText = languageModel.generate("Natural", 172);
+        res = res && generatedText.equals(expected.generate("Natural", 172));
+        res = res && !languageModel.CharDataMap.get("Natural").changed;
+        // Threads that sample the same windows for the first time draw the same texts
+        LanguageModel concurrent = new LanguageModel(7, 20);
+        concurrent.setLazyProbabilities(true);
+        concurrent.train("originofspecies.txt");
+        GenerationRequest [] requests = new GenerationRequest[100];
+        for (int i = 0; i < requests.length; i++) {
+            requests[i] = new GenerationRequest("Natural", 172, 20 + i % 10);
+        }
+        BatchGenerator generator = new BatchGenerator(concurrent, 4);
+        try {
+            String [] texts = generator.generate(requests);
+            for (int i = 0; i < requests.length; i++) {
+                res = res && texts[i].equals(expected.generate("Natural", 172, new Random(requests[i].seed)));
+            }
+        } catch (InterruptedException e) {
+            res = false;
+        } finally {
+            generator.shutdown();
+        }
+        // The dump computes what is left, and equals the one of the eager model
+        res = res && languageModel.toString().equals(expected.toString());
+        if (!res){
+            System.out.println("Actual: " + generatedText);
+        }
+        return res;
+    }
+
+    // Test method for the COUNTS sampling mode, which draws from integer counters
+    public static boolean testCountSampling() {
+        LanguageModel model = new LanguageModel(3, 20);
+        model.setSamplingMode(SamplingMode.COUNTS);
+        String word = "computer_science";
+        List list = new List();
+        for (int i = 0; i < word.length(); i++) {
+            list.update(word.charAt(word.length() - 1 - i));
+        }
+        model.calculateProbabilities(list);
+        // Each character is drawn by as many integers as its counter, and no probability is set
+        CountSampler sampler = (CountSampler) list.sampler;
+        int [] counts = new int[128];
+        for (int n = 0; n < sampler.total(); n++) {
+            counts[sampler.sample(n)]++;
+        }
+        boolean res = sampler.total() == word.length();
+        for (int i = 0; i < list.getSize(); i++) {
+            CharData cd = list.get(i);
+            res = res && counts[cd.chr] == cd.count && cd.p == 0 && cd.cp == 0;
+        }
+        // The sampler renders the list as calculateProbabilities would
+        String resString = "((o 1 0.0625 0.0625) (m 1 0.0625 0.125) (p 1 0.0625 0.1875) (u 1 0.0625 0.25) (t 1 0.0625 0.3125) (r 1 0.0625 0.375) (_ 1 0.0625 0.4375) (s 1 0.0625 0.5) (i 1 0.0625 0.5625) (n 1 0.0625 0.625) (c 3 0.1875 0.8125) (e 3 0.1875 1.0))";
+        res = res && sampler.toString().equals(resString);
+
+        LanguageModel languageModel = new LanguageModel(7, 20);
+        languageModel.setSamplingMode(SamplingMode.COUNTS);
+        languageModel.train("originofspecies.txt");
+        LanguageModel expected = new LanguageModel(7, 20);
+        expected.train("originofspecies.txt");
+        res = res && languageModel.toString().equals(expected.toString());
+        String generatedText = languageModel.generate("Natural", 172);
+        res = res && generatedText.equals(languageModel.generate("Natural", 172, new Random(20)));
+        // A mapped model computes its probabilities from the counters
+        try {
+            File file = File.createTempFile("model", ".lmm");
+            file.deleteOnExit();
+            languageModel.saveMapped(file.getPath());
+            MappedModel mapped = new MappedModel(file.getPath());
+            for (String key : expected.CharDataMap.keySet()) {
+                res = res && expected.CharDataMap.get(key).toString().equals(mapped.toString(key));
+            }
+        } catch (Exception e) {
+            System.out.println(e);
+            res = false;
+        }
+        if (!res){
+            System.out.println("Actual: " + generatedText);
+        }
+        return res;
+    }
+
+    // Test method for the metrics that a model reports to
+    public static boolean testMetrics() {
+        MetricsRecorder metrics = new MetricsRecorder();
+        LanguageModel languageModel = new LanguageModel(7, 20);
+        languageModel.setMetrics(metrics);
+        languageModel.train("originofspecies.txt");
+        LanguageModel expected = new LanguageModel(7, 20);
+        expected.train("originofspecies.txt");
+        int windows = expected.CharDataMap.size();
+        boolean res = metrics.windows() == windows && metrics.changedListLengths().count() == windows;
+        // Every character after the first window is counted once
+        res = res && metrics.updateScanDepths().count() == metrics.trainedCharacters() - 7;
+        // Measuring does not change the text
+        String generatedText = languageModel.generate("Natural", 172);
+        res = res && generatedText.equals(expected.generate("Natural", 172));
+        res = res && metrics.drawScanDepths().count() == 172 && metrics.generationNanos().count() == 1;
+        res = res && metrics.windowsMissing() == 0;
+        languageModel.generate("xqzqxzq", 100);
+        res = res && metrics.windowsMissing() == 1 && metrics.generationNanos().count() == 2;
+        // An update only reports the lists of the windows it changed: at most one per
+        // character after the first window
+        languageModel.update("Natural selection");
+        long changed = metrics.changedListLengths().count();
+        res = res && changed > 0 && changed <= "Natural selection".length() - 7;
+
+        // The generations are events of a flight recording
+        try (Recording recording = new Recording()) {
+            recording.enable("LanguageModel.Generation");
+            recording.start();
+            languageModel.setMetrics(new JfrMetrics());
+            languageModel.generate("Natural", 172);
+            recording.stop();
+            File file = File.createTempFile("metrics", ".jfr");
+            file.deleteOnExit();
+            recording.dump(file.toPath());
+            int events = 0;
+            for (RecordedEvent event : RecordingFile.readAllEvents(file.toPath())) {
+                if (event.getEventType().getName().equals("LanguageModel.Generation")) {
+                    events++;
+                    res = res && event.getLong("characters") == 172 && !event.getBoolean("windowMissing");
+                }
+            }
+            res = res && events == 1;
+        } catch (Exception e) {
+            System.out.println(e);
+            res = false;
+        }
+        if (!res){
+            System.out.println("Metrics: " + metrics);
+        }
+        return res;
+    }
+
+    // Test method for reading characters with In, in char mode
+    public static boolean testInCharMode() {
+        boolean res = true;
+        try {
+            // Reads the same characters as the scanner
+            char[] expected = MappedCorpus.readAll("originofspecies.txt");
+            In in = new In("originofspecies.txt");
+            In scanned = new In(new Scanner(new File("originofspecies.txt"), "UTF-8"));
+            for (int i = 0; i < 1000; i++) {
+                res = res && in.peekChar() == expected[i] && in.readChar() == expected[i];
+                res = res && scanned.peekChar() == expected[i] && scanned.readChar() == expected[i];
+            }
+            char[] rest = new char[expected.length];
+            int length = 1000;
+            int n;
+            while ((n = in.read(rest, length, rest.length - length)) > 0) {
+                length += n;
+            }
+            res = res && length == expected.length && Arrays.equals(rest, 1000, length, expected, 1000, length);
+            res = res && !in.hasNextChar() && in.isEmpty();
+
+            // Tokens and lines go on from the last character read
+            File file = File.createTempFile("input", ".txt");
+            file.deleteOnExit();
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+                writer.write("ab 12 xyz\nline \n \n");
+            }
+            In mixed = new In(file);
+            res = res && mixed.readChar() == 'a' && mixed.readChar() == 'b' && !mixed.isEmpty();
+            res = res && mixed.readInt() == 12 && mixed.peekChar() == ' ' && mixed.readLine().equals(" xyz");
+            res = res && mixed.readLine().equals("line ") && mixed.isEmpty() && mixed.hasNextChar();
+            // Peeking after the last character fails, like reading
+            res = res && mixed.peekChar() == ' ' && mixed.readChar() == ' ' && mixed.readChar() == '\n';
+            try {
+                mixed.peekChar();
+                res = false;
+            } catch (NoSuchElementException e) {
+            }
+            mixed.close();
+        } catch (Exception e) {
+            System.out.println(e);
+            res = false;
+        }
+        if (!res){
+            System.out.println("In char mode Test failed");
+        }
+        return res;
+    }
+
+    // Test method for training that learns the whitespace at the end of the corpus
+    public static boolean testExactIngestion() {
+        boolean res = true;
+        try {
+            File file = File.createTempFile("corpus", ".txt");
+            file.deleteOnExit();
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+                writer.write("ab ab \n\n");
+            }
+            for (int mode = 0; mode < 3; mode++) {
+                LanguageModel compat = new LanguageModel(2, 20);
+                LanguageModel exact = new LanguageModel(2, 20);
+                exact.setExactIngestion(true);
+                if (mode == 0) {
+                    compat.train(file.getPath());
+                    exact.train(file.getPath());
+                } else if (mode == 1) {
+                    compat.trainMapped(file.getPath());
+                    exact.trainMapped(file.getPath());
+                } else {
+                    compat.trainParallel(file.getPath(), 2);
+                    exact.trainParallel(file.getPath(), 2);
+                }
+                // The compatible mode stops at the last non-whitespace character
+                res = res && compat.CharDataMap.size() == 3 && compat.CharDataMap.get("b ").toString().equals("((a 1 1.0 1.0))");
+                // The exact mode learns every character
+                res = res && exact.CharDataMap.size() == 4 && exact.CharDataMap.get(" \n").toString().equals("((\n 1 1.0 1.0))");
+                res = res && exact.CharDataMap.get("b ").toString().equals("((\n 1 0.5 0.5) (a 1 0.5 1.0))");
+            }
+        } catch (Exception e) {
+            System.out.println(e);
+            res = false;
+        }
+        if (!res){
+            System.out.println("Exact ingestion Test failed");
+        }
+        return res;
+    }
+
+    // Test method for writing the textual representation of a model as a stream
+    public static boolean testDump() {
+        boolean res = true;
+        LanguageModel languageModel = new LanguageModel(3, 20);
+        languageModel.train("originofspecies.txt");
+        // The text of toString(), built with concatenation like it used to be
+        StringBuilder expected = new StringBuilder();
+        for (String key : languageModel.CharDataMap.keySet()) {
+            String list = "(";
+            ListIterator it = languageModel.CharDataMap.get(key).listIterator(0);
+            while (it.hasNext()) {
+                list += it.next().toString();
+                if (it.hasNext()) {
+                    list += " ";
+                }
+            }
+            expected.append(key + " : " + list + ")" + "\n");
+        }
+        res = res && languageModel.toString().equals(expected.toString());
+        try {
+            StringWriter writer = new StringWriter();
+            languageModel.writeTo(writer);
+            res = res && writer.toString().equals(expected.toString());
+            File file = File.createTempFile("model", ".txt");
+            file.deleteOnExit();
+            languageModel.writeTo(file.getPath());
+            String written = new String(Files.readAllBytes(file.toPath()), "UTF-8");
+            res = res && written.equals(expected.toString());
+            // A model whose windows are in a store writes them through the store,
+            // with the same lines in another order
+            LanguageModel stored = new LanguageModel(3, 20, new WindowTable(3));
+            stored.train("originofspecies.txt");
+            StringWriter storeWriter = new StringWriter();
+            stored.writeTo(storeWriter);
+            res = res && Arrays.equals(sortedLines(storeWriter.toString()), sortedLines(expected.toString()));
+        } catch (Exception e) {
+            System.out.println(e);
+            res = false;
+        }
+        if (!res){
+            System.out.println("Dump Test failed");
+        }
+        return res;
+    }
+
+    // Test method for a model that several threads train at the same time
+    public static boolean testConcurrentTraining() {
+        boolean res = true;
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            // The corpus, cut into documents that threads add at the same time
+            String text = new String(MappedCorpus.readAll("originofspecies.txt"));
+            ArrayList<String> documents = new ArrayList<String>();
+            for (int i = 0; i < text.length(); i += 20000) {
+                documents.add(text.substring(i, Math.min(text.length(), i + 20000)));
+            }
+            // Every thread also adds the same short text, so they count the same windows
+            for (int i = 0; i < 64; i++) {
+                documents.add("the theory of the origin of the species");
+            }
+            ConcurrentWindowStore store = new ConcurrentWindowStore(4);
+            LanguageModel languageModel = new LanguageModel(4, 20, store);
+            ArrayList<Future<?>> futures = new ArrayList<Future<?>>();
+            for (String document : documents) {
+                futures.add(executor.submit(() -> languageModel.update(document)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            // Each update of the store is a separate document
+            LanguageModel expected = new LanguageModel(4, 20);
+            for (String document : documents) {
+                expected.startDocument();
+                expected.update(document);
+            }
+            // The counts are exact, whatever the interleaving of the threads
+            res = res && store.size() == expected.CharDataMap.size();
+            for (String key : expected.CharDataMap.keySet()) {
+                List probs = expected.CharDataMap.get(key);
+                res = res && store.successors(key) == probs.getSize();
+                ListIterator it = probs.listIterator(0);
+                while (it.hasNext()) {
+                    CharData cd = it.next();
+                    res = res && store.count(key, cd.chr) == cd.count;
+                }
+            }
+            res = res && languageModel.generate("the ", 200).length() > 4;
+        } catch (Exception e) {
+            System.out.println(e);
+            res = false;
+        } finally {
+            executor.shutdown();
+        }
+        if (!res){
+            System.out.println("Concurrent training Test failed");
+        }
+        return res;
+    }
+
+    // Test method for a model whose short windows are kept in a DenseWindowTable
+    public static boolean testDenseWindowTable() {
+        boolean res = true;
+        for (int windowLength = 1; windowLength <= 3; windowLength++) {
+            LanguageModel languageModel = LanguageModel.trained("originofspecies.txt", windowLength, 20,
+                                                                DenseWindowTable.DEFAULT_BUDGET);
+            LanguageModel expected = new LanguageModel(windowLength, 20);
+            expected.train("originofspecies.txt");
+            if (windowLength == 3) {
+                // Too large for the default budget: the windows are in CharDataMap
+                res = res && languageModel.CharDataMap.size() == expected.CharDataMap.size();
+                continue;
+            }
+            DenseWindowTable table = DenseWindowTable.forCorpus("originofspecies.txt", windowLength,
+                                                                DenseWindowTable.DEFAULT_BUDGET);
+            LanguageModel tableModel = new LanguageModel(windowLength, 20, table);
+            tableModel.train("originofspecies.txt");
+            res = res && languageModel.CharDataMap.isEmpty() && table.size() == expected.CharDataMap.size();
+            for (String key : expected.CharDataMap.keySet()) {
+                ListIterator it = expected.CharDataMap.get(key).listIterator(0);
+                while (it.hasNext()) {
+                    CharData cd = it.next();
+                    res = res && table.count(key, cd.chr) == cd.count;
+                }
+            }
+            String initialText = "Natural".substring(0, windowLength);
+            res = res && languageModel.generate(initialText, 500).length() == 500 + windowLength;
+            // A window with a character out of the alphabet was never seen
+            res = res && languageModel.generate("\u05d0\u05d1\u05d2".substring(0, windowLength), 10).length() == windowLength;
+        }
+        // A budget that is too small gives no table
+        res = res && DenseWindowTable.forCorpus("originofspecies.txt", 2, 1000) == null;
+        // A text with a character out of the alphabet is rejected, and nothing of it is counted
+        LanguageModel dense = LanguageModel.trained("originofspecies.txt", 2, 20, DenseWindowTable.DEFAULT_BUDGET);
+        String before = dense.toString();
+        try {
+            dense.update("the caf\u00e9 is open");
+            res = false;
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            dense.update(new StringReader("the caf\u00e9 is open"));
+            res = false;
+        } catch (IllegalArgumentException e) {
+        } catch (IOException e) {
+            res = false;
+        }
+        res = res && dense.toString().equals(before);
+        // So is a corpus with such a character, by train and trainMapped
+        try {
+            File corpus = File.createTempFile("corpus", ".txt");
+            corpus.deleteOnExit();
+            Files.writeString(corpus.toPath(), "the caf\u00e9 is open");
+            try {
+                dense.train(corpus.getPath());
+                res = false;
+            } catch (IllegalArgumentException e) {
+            }
+            try {
+                dense.trainMapped(corpus.getPath());
+                res = false;
+            } catch (IllegalArgumentException e) {
+            }
+        } catch (IOException e) {
+            res = false;
+        }
+        res = res && dense.toString().equals(before);
+        dense.update("the cafe is open");
+        res = res && !dense.toString().equals(before);
+        if (!res){
+            System.out.println("Dense window table Test failed");
+        }
+        return res;
+    }
+
+    // Test method for the compact() method, which prunes a model into a CompactModel
+    public static boolean testCompact() {
+        // Without pruning, the compact model has the same windows and texts as the original
+        LanguageModel languageModel = new LanguageModel(7, 20);
+        languageModel.train("originofspecies.txt");
+        String expectedDump = languageModel.toString();
+        int windows = languageModel.CharDataMap.size();
+        LanguageModel expected = new LanguageModel(7, 20);
+        expected.train("originofspecies.txt");
+        CompactionReport report = languageModel.compact(1, Integer.MAX_VALUE);
+        boolean res = report.windowsAfter == windows && report.entriesAfter == report.entriesBefore;
+        res = res && report.bytesAfter < report.bytesBefore && languageModel.CharDataMap.isEmpty();
+        res = res && languageModel.toString().equals(expectedDump);
+        String generatedText = languageModel.generate("Natural", 172);
+        res = res && generatedText.equals(expected.generate("Natural", 172));
+
+        // Pruning keeps the windows and characters that are frequent enough
+        LanguageModel pruned = new LanguageModel(7, 20);
+        pruned.train("originofspecies.txt");
+        CompactionReport prunedReport = pruned.compact(2, 3);
+        CompactModel compacted = new CompactModel(7, expected.CharDataMap, 2, 3);
+        res = res && prunedReport.windowsAfter == compacted.size() && prunedReport.windowsAfter < windows;
+        res = res && prunedReport.bytesAfter < report.bytesAfter;
+        for (String key : expected.CharDataMap.keySet()) {
+            List probs = expected.CharDataMap.get(key);
+            int[] counts = new int[probs.getSize()];
+            ListIterator it = probs.listIterator(0);
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = it.next().count;
+            }
+            Arrays.sort(counts);
+            // The characters counted more than the third largest count are kept
+            int threshold = Math.max(1, (counts.length >= 3) ? counts[counts.length - 3] : 0);
+            it = probs.listIterator(0);
+            int kept = 0;
+            while (it.hasNext()) {
+                CharData cd = it.next();
+                int count = compacted.count(key, cd.chr);
+                res = res && (count == 0 || count == cd.count) && (cd.count <= threshold || count == cd.count);
+                kept += (count > 0) ? 1 : 0;
+            }
+            res = res && kept <= 3 && (kept == 0) == (compacted.toString(key) == null);
+        }
+        // A pruned model can generate, but not be trained any more
+        res = res && pruned.generate("Natural", 100).startsWith("Natural");
+        try {
+            pruned.update("more text");
+            res = false;
+        } catch (UnsupportedOperationException e) {
+            // Expected
+        }
+        if (!res){
+            System.out.println("Compact Test failed: " + report + ", " + prunedReport);
+        }
+        return res;
+    }
+
+    // Test method for approximate training with a SketchStore
+    public static boolean testSketchStore() {
+        LanguageModel expected = new LanguageModel(4, 20);
+        expected.train("originofspecies.txt");
+        long total = 0;
+        String mostFrequent = null;
+        int mostFrequentCount = 0;
+        for (String key : expected.CharDataMap.keySet()) {
+            int count = 0;
+            ListIterator it = expected.CharDataMap.get(key).listIterator(0);
+            while (it.hasNext()) {
+                count += it.next().count;
+            }
+            total += count;
+            if (count > mostFrequentCount) {
+                mostFrequent = key;
+                mostFrequentCount = count;
+            }
+        }
+        boolean res = true;
+        // A budget too small for all the windows, and one large enough
+        for (long budget : new long[] {2L << 20, 64L << 20}) {
+            SketchStore sketch = SketchStore.forBudget(4, budget);
+            LanguageModel languageModel = LanguageModel.trainedApproximately("originofspecies.txt", 4, 20, sketch);
+            res = res && sketch.total() == total && sketch.sizeInBytes() <= budget;
+            res = res && languageModel.CharDataMap.containsKey(mostFrequent);
+            // The estimated counts are never less than the true ones, and a share of at least
+            // confidence() of them is within the error bound
+            int entries = 0;
+            int withinBound = 0;
+            for (String key : languageModel.CharDataMap.keySet()) {
+                List exact = expected.CharDataMap.get(key);
+                ListIterator it = languageModel.CharDataMap.get(key).listIterator(0);
+                while (it.hasNext()) {
+                    CharData cd = it.next();
+                    int exactCount = exact.get(exact.indexOf(cd.chr)).count;
+                    res = res && cd.count >= exactCount;
+                    entries++;
+                    withinBound += (cd.count - exactCount <= sketch.errorBound()) ? 1 : 0;
+                }
+            }
+            res = res && withinBound >= sketch.confidence() * entries;
+            if (budget > (2L << 20)) {
+                // Every window is tracked from its first occurrence
+                res = res && languageModel.CharDataMap.size() == expected.CharDataMap.size();
+            } else {
+                res = res && languageModel.CharDataMap.size() < expected.CharDataMap.size();
+            }
+            res = res && languageModel.generate("Natu", 100).startsWith("Natu");
+        }
+        if (!res){
+            System.out.println("Sketch store Test failed");
+        }
+        return res;
+    }
+
+    // Test method for the probabilities of a CharDataArray, and the characters drawn from it
+    public static boolean testCharDataArray() {
+        boolean result = true;
+        LanguageModel model = new LanguageModel(3, 20);
+        // The random numbers that the model draws, from the same seed
+        Random random = new Random(20);
+        String [] words = {"home","worker","william_shakespeare"};
+        char [][] expected = {
+                {'m','h','e','h'},
+                {'w','o','k','e','w','r'},
+                {'r','s','h','i','a','m','k','i','r','h','s','a','a','i','a','i','l','l','r'}
+        };
+        for (int i = 0; i < words.length; i++) {
+            List list = new List();
+            CharDataArray array = new CharDataArray();
+            for (int j = 0; j < words[i].length(); j++) {
+                list.update(words[i].charAt(words[i].length() - 1 - j));
+                array.update(words[i].charAt(words[i].length() - 1 - j));
+            }
+            model.calculateProbabilities(list);
+            array.calculateProbabilities();
+            // The same probabilities as a List, and the same characters from the same random numbers
+            result = result && list.toString().equals(array.toString());
+            for (int j = 0; j < words[i].length(); j++) {
+                char actual = array.charFor(random.nextDouble());
+                if (actual != expected[i][j]) {
+                    System.out.println("Expected: " + expected[i][j]);
+                    System.out.println("Actual: " + actual);
+                    result = false;
+                }
+            }
+        }
+        if (!result){
+            System.out.println("CharDataArray sampling Test failed");
+        }
+        return result;
+    }
+
+    // Test method for a model whose windows are kept in a ContextTrie
+    public static boolean testContextTrie() {
+        ContextTrie trie = new ContextTrie(7);
+        LanguageModel languageModel = new LanguageModel(7, 20, trie);
+        languageModel.train("originofspecies.txt");
+        LanguageModel expected = new LanguageModel(7, 20);
+        expected.train("originofspecies.txt");
+        boolean res = trie.size() == expected.CharDataMap.size();
+        for (String key : expected.CharDataMap.keySet()) {
+            res = res && expected.CharDataMap.get(key).toString().equals(trie.toString(key));
+        }
+        // Generation follows the suffix links, and draws the same text as the plain model
+        String generatedText = languageModel.generate("Natural", 172);
+        res = res && generatedText.equals(expected.generate("Natural", 172));
+        // The dump lists the same windows as the plain model, in another order
+        res = res && Arrays.equals(sortedLines(trie.toString()), sortedLines(expected.toString()));
+        if (!res){
+            System.out.println("Actual: " + generatedText);
+        }
+        return res;
+    }
+
+    // Returns the lines of the given dump, sorted, to compare dumps that list windows in another order
+    private static String[] sortedLines(String dump) {
+        String[] lines = dump.split("\n");
+        Arrays.sort(lines);
+        return lines;
+    }
+
+    // Test method for a model whose windows are kept in a WindowTable
+    public static boolean testWindowTable() {
+        WindowTable table = new WindowTable(7);
+        LanguageModel languageModel = new LanguageModel(7, 20, table);
+        languageModel.train("originofspecies.txt");
+        LanguageModel expected = new LanguageModel(7, 20);
+        expected.train("originofspecies.txt");
+        boolean res = table.size() == expected.CharDataMap.size();
+        for (String key : expected.CharDataMap.keySet()) {
+            res = res && expected.CharDataMap.get(key).toString().equals(table.toString(key));
+        }
+        String generatedText = languageModel.generate("Natural", 172);
+        String expectedGeneratedText = expected.generate("Natural", 172);
+        res = res && generatedText.equals(expectedGeneratedText);
+        // A table for windows of another length is rejected, instead of storing truncated windows
+        try {
+            new LanguageModel(6, 20, new WindowTable(7));
+            res = false;
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        if (!res){
+            System.out.println("Expected: " + expectedGeneratedText);
+            System.out.println("Actual: " + generatedText);
+        }
+        return res;
+    }
+
+    // Test method for the sampling modes of the model
+    public static boolean testSamplingModes() {
+        // Binary search must generate exactly the text of the linear scan
+        LanguageModel languageModel = new LanguageModel(7, 20);
+        languageModel.setSamplingMode(SamplingMode.BINARY_SEARCH);
+        languageModel.train("originofspecies.txt");
+        LanguageModel expected = new LanguageModel(7, 20);
+        expected.train("originofspecies.txt");
+        String generatedText = languageModel.generate("Natural", 172);
+        String expectedGeneratedText = expected.generate("Natural", 172);
+        boolean res = generatedText.equals(expectedGeneratedText);
+        if (!res){
+            System.out.println("Expected: " + expectedGeneratedText);
+            System.out.println("Actual: " + generatedText);
+        }
+
+        // The alias method must draw each character with its probability
+        LanguageModel aliasModel = new LanguageModel(3, 20);
+        aliasModel.setSamplingMode(SamplingMode.ALIAS);
+        String word = "william_shakespeare";
+        List list = new List();
+        for (int i = 0; i < word.length(); i++) {
+            list.update(word.charAt(i));
+        }
+        aliasModel.calculateProbabilities(list);
+        int draws = 100000;
+        int [] counts = new int[128];
+        for (int i = 0; i < draws; i++) {
+            counts[aliasModel.getRandomChar(list)]++;
+        }
+        for (int i = 0; i < list.getSize(); i++) {
+            CharData cd = list.get(i);
+            double frequency = (double) counts[cd.chr] / draws;
+            if (Math.abs(frequency - cd.p) > 0.01) {
+                System.out.println("Alias: " + cd + " drawn with frequency " + frequency);
+                res = false;
+            }
+        }
+        return res;
+    }
+
     private static boolean stringEqualsNoSpaces(String s1, String s2) {
         s1 = s1.replaceAll("\\s+", "");
         s2 = s2.replaceAll("\\s+", "");
@@ -1,3 +1,5 @@
+import java.io.IOException;
+
 /** A linked list of character data objects. */
 public class List {
 
@@ -6,6 +8,15 @@ public class List {
 
     // The number of elements in this list
     private int size;
+
+    // The sampler of this list, built by LanguageModel.calculateProbabilities,
+    // or null. It is dropped whenever this list changes.
+    Sampler sampler;
+
+    // True if this list changed since LanguageModel.calculateProbabilities
+    // last computed its probabilities. Read under the lock of this list when
+    // the probabilities are computed lazily, while other threads may draw.
+    boolean changed;
     
     /** Constructs an empty list. */
     public List() {
@@ -32,24 +43,28 @@ public class List {
         Node newN = new Node(cd, first);
         first = newN;
         size++;
+        sampler = null;
+        changed = true;
     }
     
     /** Textual representation of this list. */
     public String toString() {
-        if (size == 0) {
-            return "()";
-        }
-        String str = "(";
+        return WindowStore.toString(this::appendTo);
+    }
+
+    /** Appends the textual representation of this list to the given output,
+     *  in time proportional to the length of the list. */
+    public void appendTo(Appendable out) throws IOException {
+        out.append('(');
         Node current = first;
         while (current != null) {
-            str += current.cp.toString();
+            current.cp.appendTo(out);
             if (current.next != null) {
-                str += " ";
+                out.append(' ');
             }
             current = current.next;
         }
-        str += ")";
-        return str;
+        out.append(')');
     }
 
     /** Returns the index of the first CharData object with the given chr. */
@@ -68,13 +83,31 @@ public class List {
 
     /** Updates the counter or adds a new CharData. */
     public void update(char chr) {
-        int index = indexOf(chr);
-        if (index == -1) {
+        update(chr, 1);
+    }
+
+    /** Adds the given number to the counter of the given character,
+     *  or adds the character with that counter. Scans the list once. */
+    public void update(char chr, int count) {
+        CharData cd = find(chr);
+        if (cd == null) {
             addFirst(chr);
+            first.cp.count = count;
         } else {
-            CharData cd = get(index);
-            cd.count++;
+            cd.count += count;
+        }
+        sampler = null;
+        changed = true;
+    }
+
+    // Returns the first CharData object with the given chr, or null.
+    private CharData find(char chr) {
+        for (Node current = first; current != null; current = current.next) {
+            if (current.cp.chr == chr) {
+                return current.cp;
+            }
         }
+        return null;
     }
 
     /** Removes a CharData object from the list. */
@@ -89,6 +122,8 @@ public class List {
                     prev.next = current.next;
                 }
                 size--;
+                sampler = null;
+                changed = true;
                 return true;
             }
             prev = current;
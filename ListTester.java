@@ -24,6 +24,9 @@ public class ListTester {
             case "remove":
                 result = testRemove();
                 break;
+            case "charDataArray":
+                result = testCharDataArray();
+                break;
             
             case "all":
                 result = testAddFirst();
@@ -32,6 +35,7 @@ public class ListTester {
                 result = result && testGet();
                 result = result && testUpdate();
                 result = result && testRemove();
+                result = result && testCharDataArray();
                 break; 
             default:
                 break;
@@ -257,4 +261,198 @@ public class ListTester {
         return result;
     }
     
+    // Checks that a CharDataArray behaves like a List, under the same updates and removals
+    public static boolean testCharDataArray() {
+        boolean result = true;
+        String [] testWords = {"commitee_","Hello_World", "Java_", "linked_lists_are_fun", "lexicographic_order"};
+        for (int i = 0; i < testWords.length; i++) {
+            String w = testWords[i];
+            List list = new List();
+            CharDataArray array = new CharDataArray();
+            boolean res = true;
+            for (int j = 0; j < w.length(); j++) {
+                list.update(w.charAt(j));
+                array.update(w.charAt(j));
+                res = res && list.toString().equals(array.toString());
+            }
+            for (int j = 0; j < w.length(); j++) {
+                char c = w.charAt(j);
+                res = res && list.indexOf(c) == array.indexOf(c);
+                res = res && list.get(j % list.getSize()).count == array.get(j % array.getSize()).count;
+            }
+            for (int j = 0; j < w.length(); j += 3) {
+                char c = w.charAt(j);
+                res = res && list.remove(c) == array.remove(c);
+                res = res && list.toString().equals(array.toString()) && list.getSize() == array.getSize();
+            }
+            if (!res){
+                System.out.println("Word: " + w);
+                System.out.println("Expected: " + list.toString());
+                System.out.println("Actual: " + array.toString());
+            }
+            result = result && res;
+        }
+        // The cases of the List tests, on a CharDataArray
+        result = result && testArrayToString();
+        result = result && testArrayIndexOf();
+        result = result && testArrayGet();
+        result = result && testArrayUpdate();
+        result = result && testArrayRemove();
+        result = result && testArrayIterator();
+        if (!result){
+            System.out.println("CharDataArray Test failed");
+        }
+        return result;
+    }
+
+    // The cases of testToString(), on a CharDataArray
+    private static boolean testArrayToString() {
+        boolean result = true;
+        String [] testWords = {"word","first","list"};
+        String [] solutions = {
+            "((w 1 0.0 0.0) (o 1 0.0 0.0) (r 1 0.0 0.0) (d 1 0.0 0.0))",
+            "((f 1 0.0 0.0) (i 1 0.0 0.0) (r 1 0.0 0.0) (s 1 0.0 0.0) (t 1 0.0 0.0))",
+            "((l 1 0.0 0.0) (i 1 0.0 0.0) (s 1 0.0 0.0) (t 1 0.0 0.0))"
+        };
+        for (int i = 0; i < testWords.length; i++) {
+            CharDataArray array = new CharDataArray();
+            for (int j = 0; j < testWords[i].length(); j++) {
+                array.addFirst(testWords[i].charAt(testWords[i].length() - 1 - j));
+            }
+            boolean res = array.toString().equals(solutions[i]);
+            if (!res){
+                System.out.println("Expected: " + solutions[i]);
+                System.out.println("Actual: " + array.toString());
+            }
+            result = result && res;
+        }
+        return result;
+    }
+
+    // The cases of testIndexOf(), on a CharDataArray
+    private static boolean testArrayIndexOf() {
+        boolean result = true;
+        String [] testWords = {"Hello_world", "JavA", "dictionary", "lexicographic"};
+        CharDataArray array = new CharDataArray();
+        for (int i = 0; i < testWords.length; i++) {
+            String w = testWords[i];
+            for (int j = 0; j < w.length(); j++) {
+                array.addFirst(w.charAt(w.length() - 1 - j));
+            }
+            for (int j = 0; j < w.length(); j++) {
+                boolean temp = w.indexOf(w.charAt(j)) == array.indexOf(w.charAt(j));
+                if (!temp){
+                    System.out.println("Word: " + w + ", Char: " + w.charAt(j));
+                    System.out.println("Expected: " + w.indexOf(w.charAt(j)));
+                    System.out.println("Actual: " + array.indexOf(w.charAt(j)));
+                }
+                result = result && temp;
+            }
+        }
+        return result;
+    }
+
+    // The cases of testGet(), on a CharDataArray
+    private static boolean testArrayGet() {
+        boolean result = true;
+        String [] testWords = {"apple", "banana", "orange", "grape", "kiwi"};
+        CharDataArray array = new CharDataArray();
+        for (int i = 0; i < testWords.length; i++) {
+            String w = testWords[i];
+            for (int j = 0; j < w.length(); j++) {
+                array.addFirst(w.charAt(w.length() - 1 - j));
+            }
+            for (int j = 0; j < w.length(); j++) {
+                boolean temp = array.get(j).equals(w.charAt(j));
+                if (!temp){
+                    System.out.println("Word: " + w + ", Index: " + j);
+                    System.out.println("Expected: " + w.charAt(j));
+                    System.out.println("Actual: " + array.get(j).chr);
+                }
+                result = result && temp;
+            }
+        }
+        return result;
+    }
+
+    // The cases of testUpdate(), on a CharDataArray
+    private static boolean testArrayUpdate() {
+        boolean result = true;
+        String [] testWords = {"commitee_","Hello_World", "Java_", "linked_lists_are_fun", "lexicographic_order"};
+        for (int i = 0; i < testWords.length; i++) {
+            CharDataArray array = new CharDataArray();
+            String w = testWords[i];
+            for (int j = 0; j < w.length(); j++) {
+                char c = w.charAt(j);
+                int count = countCharUpToIndex(w, c, j);
+                array.update(c);
+                int index = array.indexOf(c);
+                boolean temp = index != -1 && array.get(index).count == count + 1;
+                if (!temp){
+                    System.out.println("Word: " + w + ", Index: " + j);
+                    System.out.println("Expected: " + (count + 1));
+                    System.out.println("Actual: " + array.toString());
+                }
+                result = result && temp;
+            }
+        }
+        return result;
+    }
+
+    // The cases of testRemove(), on a CharDataArray
+    private static boolean testArrayRemove() {
+        boolean result = true;
+        String [] testWords = {"commitee_","Hello_World", "Java_", "linked_lists_are_fun", "lexicographic_order"};
+        char [][] removeChars = {
+            {'m','e','_','y'},
+            {'H','l','_','r'},
+            {'a','v','_', 'J'},
+            {'l','i','_','r'},
+            {'o','r','_','g'},
+        };
+        for (int i = 0; i < testWords.length; i++) {
+            CharDataArray array = new CharDataArray();
+            String w = testWords[i];
+            for (int j = 0; j < w.length(); j++) {
+                array.addFirst(w.charAt(w.length() - 1 - j));
+            }
+            boolean res = true;
+            for (int j = 0; j < removeChars[i].length; j++) {
+                int size = array.getSize();
+                boolean removeResult = array.remove(removeChars[i][j]);
+                res = res && array.getSize() == (removeResult ? size - 1 : size);
+            }
+            if (!res){
+                System.out.println("Word: " + w + ", chars attempted to remove: " + Arrays.toString(removeChars[i]));
+                System.out.println("Actual: " + array.toString());
+            }
+            result = result && res;
+        }
+        return result;
+    }
+
+    // Iterates over a CharDataArray from each index, and compares with a List
+    private static boolean testArrayIterator() {
+        boolean result = true;
+        String w = "lexicographic_order";
+        List list = new List();
+        CharDataArray array = new CharDataArray();
+        for (int j = 0; j < w.length(); j++) {
+            list.update(w.charAt(j));
+            array.update(w.charAt(j));
+        }
+        for (int index = 0; index <= array.getSize(); index++) {
+            ListIterator expected = list.listIterator(index);
+            CharDataArray.Iterator it = array.listIterator(index);
+            while (expected.hasNext()) {
+                result = result && it.hasNext() && it.next().toString().equals(expected.next().toString());
+            }
+            result = result && !it.hasNext();
+        }
+        result = result && array.listIterator(-1) == null && array.listIterator(array.getSize() + 1) == null;
+        if (!result){
+            System.out.println("Iterator Test failed: " + array.toString());
+        }
+        return result;
+    }
 }
@@ -0,0 +1,119 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/** Reads the characters of a UTF-8 text file.
+ *  The file is memory-mapped, region by region, and each region is decoded in bulk
+ *  straight into the caller's buffer. Used to train on large corpora, where reading
+ *  one character at a time through In is too slow. */
+public class MappedCorpus extends Reader {
+
+    // The number of bytes mapped at a time
+    private static final long REGION_SIZE = 1L << 26;
+
+    // The file being read, and its size in bytes
+    private final FileChannel channel;
+    private final long fileSize;
+
+    // Decodes the bytes of the file. Like In, malformed input is replaced, not reported.
+    private final CharsetDecoder decoder;
+
+    // The mapped region currently being decoded, and its position in the file
+    private MappedByteBuffer region;
+    private long regionStart;
+
+    // A character decoded but not yet returned (the low half of a surrogate pair
+    // that did not fit in the caller's buffer), or -1
+    private int pending = -1;
+
+    // True once the decoder was flushed, i.e. all the file was read
+    private boolean done;
+
+    /** Opens the given file for reading. */
+    public MappedCorpus(String fileName) throws IOException {
+        channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ);
+        fileSize = channel.size();
+        decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        map(0);
+    }
+
+    // Maps the region of the file that starts at the given position.
+    private void map(long position) throws IOException {
+        regionStart = position;
+        region = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                             Math.min(REGION_SIZE, fileSize - position));
+    }
+
+    /** Reads up to len characters into cbuf, starting at index off.
+     *  Returns the number of characters read, or -1 if the end of the file was reached. */
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        CharBuffer out = CharBuffer.wrap(cbuf, off, len);
+        if (pending != -1) {
+            out.put((char) pending);
+            pending = -1;
+        }
+        while (out.position() == off && !done) {
+            boolean lastRegion = regionStart + region.limit() == fileSize;
+            CoderResult result = decoder.decode(region, out, lastRegion);
+            if (result.isOverflow()) {
+                if (out.position() == off) {
+                    // Only a surrogate pair is left to decode, and there is room for one char
+                    CharBuffer pair = CharBuffer.allocate(2);
+                    decoder.decode(region, pair, lastRegion);
+                    pair.flip();
+                    out.put(pair.get());
+                    if (pair.hasRemaining()) {
+                        pending = pair.get();
+                    }
+                }
+                break;
+            }
+            if (!lastRegion) {
+                // The region is used up, except maybe for a sequence cut by its end
+                map(regionStart + region.position());
+            } else {
+                decoder.flush(out);
+                done = true;
+            }
+        }
+        int count = out.position() - off;
+        return (count == 0) ? -1 : count;
+    }
+
+    /** Returns all the characters of the given file. Throws an IOException if the file has
+     *  more characters than an array can hold (Integer.MAX_VALUE - 8). */
+    public static char[] readAll(String fileName) throws IOException {
+        try (MappedCorpus in = new MappedCorpus(fileName)) {
+            // A UTF-8 file has at most one char per byte
+            char[] text = new char[(int) Math.min(in.fileSize, Integer.MAX_VALUE - 8)];
+            int length = 0;
+            int n;
+            while (length < text.length && (n = in.read(text, length, text.length - length)) != -1) {
+                length += n;
+            }
+            if (length == text.length && in.read(new char[2], 0, 2) != -1) {
+                throw new IOException(fileName + " has too many characters to be read into an array");
+            }
+            return (length == text.length) ? text : Arrays.copyOf(text, length);
+        }
+    }
+
+    /** Closes the file. */
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,251 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+/** A read-only window store whose data stays in a memory-mapped file.
+ *  Windows are looked up, and characters drawn, by reading the file in place: no List or
+ *  CharData object is ever built, the model is not on the heap, and processes that map
+ *  the same file share its pages. Opening a model only maps the file.
+ *  The file is written from a trained LanguageModel by write(). It holds (big-endian):
+ *  <pre>
+ *  int     MAGIC, int VERSION
+ *  int     window length, int number of slots (a power of 2), int number of windows
+ *  (long, int)[slots]   the hash table: the 64-bit hash code of a window, and the
+ *                       position of its entry in the file (0 for an empty slot)
+ *  entries, one per window:
+ *      char[window length]   the window
+ *      int                   n, the number of characters that follow it
+ *      char[n], int[n], double[n]   the characters, their counters and their
+ *                                   cumulative probabilities, in list order
+ *  </pre>
+ *  A model file is at most 2GB, the largest size that can be mapped at once. */
+public class MappedModel implements WindowStore {
+
+    // The first bytes of every model file: "LMM" followed by a zero byte
+    private static final int MAGIC = 0x4C4D4D00;
+
+    // The version of the file format
+    private static final int VERSION = 1;
+
+    // The size of the header, and of a slot of the hash table, in bytes
+    private static final int HEADER_SIZE = 20;
+    private static final int SLOT_SIZE = 12;
+
+    // The mapped file. Only absolute reads are used, so the buffer can be shared by threads.
+    private final MappedByteBuffer buffer;
+
+    // The length of the windows, the number of slots, and the number of windows
+    private final int windowLength;
+    private final int slots;
+    private final int windows;
+
+    /** Maps the given model file. Throws an IOException if its header is not the header
+     *  of a model file, or describes a hash table that does not fit in the file. */
+    public MappedModel(String fileName) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException(fileName + " is not a mapped model file");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException(fileName + " has unsupported version " + buffer.getInt(4));
+        }
+        windowLength = buffer.getInt(8);
+        slots = buffer.getInt(12);
+        windows = buffer.getInt(16);
+        if (windowLength < 0 || windows < 0) {
+            throw new IOException(fileName + " has a negative window length or number of windows");
+        }
+        // The hash table is probed until an empty slot, so it must have one
+        if (slots <= 0 || Integer.bitCount(slots) != 1 || windows >= slots) {
+            throw new IOException(fileName + " has an invalid number of slots: " + slots);
+        }
+        if (HEADER_SIZE + (long) slots * SLOT_SIZE > buffer.limit()) {
+            throw new IOException(fileName + " is truncated: its hash table does not fit in it");
+        }
+    }
+
+    /** Writes the given trained model to the given file, in the format of this class. */
+    public static void write(LanguageModel model, String fileName) throws IOException {
+        int windowLength = model.windowLength;
+        int windows = model.CharDataMap.size();
+        int slots = 16;
+        while (windows > slots / 2) {
+            slots *= 2;
+        }
+        long size = HEADER_SIZE + (long) slots * SLOT_SIZE;
+        for (List probs : model.CharDataMap.values()) {
+            size += 2L * windowLength + 4 + 14L * probs.getSize();
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("The model is too large for a mapped model file");
+        }
+
+        try (RandomAccessFile file = new RandomAccessFile(fileName, "rw")) {
+            file.setLength(0);
+            MappedByteBuffer out = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            out.putInt(MAGIC).putInt(VERSION).putInt(windowLength).putInt(slots).putInt(windows);
+            int entry = HEADER_SIZE + slots * SLOT_SIZE;
+            for (Map.Entry<String, List> e : model.CharDataMap.entrySet()) {
+                long hash = WindowKey.longHashOf(e.getKey());
+                int slot = WindowStores.slotOf(hash, slots);
+                while (out.getInt(slotPosition(slot) + 8) != 0) {
+                    slot = (slot + 1) & (slots - 1);
+                }
+                out.putLong(slotPosition(slot), hash);
+                out.putInt(slotPosition(slot) + 8, entry);
+
+                out.position(entry);
+                for (int i = 0; i < windowLength; i++) {
+                    out.putChar(e.getKey().charAt(i));
+                }
+                List probs = e.getValue();
+                int n = probs.getSize();
+                out.putInt(n);
+                int chars = out.position();
+                // Computes the cumulative probabilities from the counters, so that the p and
+                // cp fields of the list are not needed (they are 0 in the COUNTS mode)
+                int[] counts = new int[n];
+                int total = 0;
+                ListIterator it = probs.listIterator(0);
+                for (int i = 0; i < n; i++) {
+                    CharData cd = it.next();
+                    counts[i] = cd.count;
+                    total += cd.count;
+                    out.putChar(chars + 2 * i, cd.chr);
+                    out.putInt(chars + 2 * n + 4 * i, cd.count);
+                }
+                double[] cps = new double[n];
+                WindowStores.cumulativeProbabilities(counts, n, total, cps);
+                for (int i = 0; i < n; i++) {
+                    out.putDouble(chars + 6 * n + 8 * i, cps[i]);
+                }
+                entry = chars + 14 * n;
+            }
+            out.force();
+        }
+    }
+
+    // Returns the position of the given slot in the file.
+    private static int slotPosition(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    // Returns the position of the entry of the given window in the file, or -1.
+    private int entryOf(CharSequence window) {
+        if (window.length() != windowLength) {
+            return -1;
+        }
+        long hash = WindowStores.hashOf(window);
+        for (int slot = WindowStores.slotOf(hash, slots); ; slot = (slot + 1) & (slots - 1)) {
+            int entry = buffer.getInt(slotPosition(slot) + 8);
+            if (entry == 0) {
+                return -1;
+            }
+            if (buffer.getLong(slotPosition(slot)) == hash && keyEquals(entry, window)) {
+                return entry;
+            }
+        }
+    }
+
+    // Checks if the entry at the given position is the entry of the given window.
+    private boolean keyEquals(int entry, CharSequence window) {
+        for (int i = 0; i < windowLength; i++) {
+            if (buffer.getChar(entry + 2 * i) != window.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the length of the windows of this model, as written in the file. */
+    public int windowLength() {
+        return windowLength;
+    }
+
+    /** Returns the number of windows of this model. */
+    public int size() {
+        return windows;
+    }
+
+    /** Not supported: a mapped model is read-only. */
+    public void update(CharSequence window, char chr) {
+        throw new UnsupportedOperationException("A mapped model is read-only");
+    }
+
+    /** Does nothing: the cumulative probabilities are stored in the file. */
+    public void calculateProbabilities() {
+    }
+
+    /** Returns the first character that follows the given window whose cumulative
+     *  probability is greater than r (found by binary search in the file),
+     *  or -1 if the window was never seen. */
+    public int getRandomChar(CharSequence window, double r) {
+        int entry = entryOf(window);
+        if (entry == -1) {
+            return -1;
+        }
+        int n = buffer.getInt(entry + 2 * windowLength);
+        int chars = entry + 2 * windowLength + 4;
+        int cps = chars + 6 * n;
+        int low = 0;
+        int high = n - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (buffer.getDouble(cps + 8 * mid) > r) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return buffer.getChar(chars + 2 * low);
+    }
+
+    /** Returns the list of characters that follow the given window, in the textual
+     *  format of List, or null if the window was never seen. */
+    public String toString(CharSequence window) {
+        int entry = entryOf(window);
+        return (entry == -1) ? null : WindowStore.toString(out -> appendEntry(out, entry));
+    }
+
+    // Appends the characters of the entry at the given position, in the format of List.
+    private void appendEntry(Appendable out, int entry) throws IOException {
+        int n = buffer.getInt(entry + 2 * windowLength);
+        int chars = entry + 2 * windowLength + 4;
+        char[] entryChars = new char[n];
+        int[] counts = new int[n];
+        int total = 0;
+        for (int i = 0; i < n; i++) {
+            entryChars[i] = buffer.getChar(chars + 2 * i);
+            counts[i] = buffer.getInt(chars + 2 * n + 4 * i);
+            total += counts[i];
+        }
+        WindowStores.appendEntries(out, entryChars, counts, n, total);
+    }
+
+    /** Returns a textual representation of this model, in the format of
+     *  LanguageModel.toString(). Windows are listed in the order of the file. */
+    public String toString() {
+        return WindowStore.toString(this::appendTo);
+    }
+
+    /** Appends the text of toString() to the given output, one window at a time. */
+    public void appendTo(Appendable out) throws IOException {
+        int entry = HEADER_SIZE + slots * SLOT_SIZE;
+        for (int w = 0; w < windows; w++) {
+            for (int i = 0; i < windowLength; i++) {
+                out.append(buffer.getChar(entry + 2 * i));
+            }
+            out.append(" : ");
+            appendEntry(out, entry);
+            out.append('\n');
+            int n = buffer.getInt(entry + 2 * windowLength);
+            entry += 2 * windowLength + 4 + 14 * n;
+        }
+    }
+}
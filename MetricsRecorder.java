@@ -0,0 +1,165 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/** Metrics that keep counters and histograms in memory, to be read or printed at any time.
+ *  Safe to use from several threads. Each histogram counts the values in buckets of powers
+ *  of 2, so recording a value is a few atomic additions. */
+public class MetricsRecorder implements ModelMetrics {
+
+    /** Counts values in buckets: bucket 0 holds 0, and bucket b holds the values
+     *  from 2^(b-1) to 2^b - 1. */
+    public static class Histogram {
+
+        // The number of values in each bucket
+        private final AtomicLongArray buckets = new AtomicLongArray(65);
+
+        // The number, sum and maximum of the values
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        /** Records the given value (not negative). */
+        public void record(long value) {
+            buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value));
+            count.increment();
+            sum.add(value);
+            max.accumulate(value);
+        }
+
+        /** Returns the number of values recorded. */
+        public long count() {
+            return count.sum();
+        }
+
+        /** Returns the mean of the values recorded, or 0 if there is none. */
+        public double mean() {
+            long n = count();
+            return (n == 0) ? 0 : (double) sum.sum() / n;
+        }
+
+        /** Returns the largest value recorded, or 0 if there is none. */
+        public long max() {
+            return max.get();
+        }
+
+        /** Returns an upper bound of the given quantile (between 0 and 1) of the values
+         *  recorded: the largest value of the bucket that holds it. */
+        public long quantile(double q) {
+            long rank = (long) Math.ceil(q * count());
+            long seen = 0;
+            for (int b = 0; b < 65; b++) {
+                seen += buckets.get(b);
+                if (seen >= rank && seen > 0) {
+                    return Math.min(max(), (b == 0) ? 0 : (b == 64) ? Long.MAX_VALUE : (1L << b) - 1);
+                }
+            }
+            return 0;
+        }
+
+        /** Textual representation of this histogram: count, mean, median, 99th percentile and max. */
+        public String toString() {
+            return String.format("count=%d mean=%.2f p50<=%d p99<=%d max=%d",
+                                 count(), mean(), quantile(0.5), quantile(0.99), max());
+        }
+    }
+
+    // The characters read, and the time spent, by all the trainings
+    private final LongAdder trainedCharacters = new LongAdder();
+    private final LongAdder trainingNanos = new LongAdder();
+
+    // The number of windows after the last training
+    private volatile int windows;
+
+    // The distribution of the lengths of the lists that the last training changed (only
+    // those: a whole-model distribution would cost a pass over the model per update),
+    // and the distributions of the scan depths of List.update and of the draws
+    private volatile Histogram changedListLengths = new Histogram();
+    private final Histogram updateScanDepths = new Histogram();
+    private final Histogram drawScanDepths = new Histogram();
+
+    // The latencies of the generations in nanoseconds, and the number of
+    // generations that stopped on a window that was never seen
+    private final Histogram generationNanos = new Histogram();
+    private final LongAdder windowsMissing = new LongAdder();
+
+    public void trained(long characters, long nanos, int windows) {
+        trainedCharacters.add(characters);
+        trainingNanos.add(nanos);
+        this.windows = windows;
+        // The model reports the lengths of the lists that changed during this training
+        changedListLengths = new Histogram();
+    }
+
+    public void changedListLength(int length) {
+        changedListLengths.record(length);
+    }
+
+    public void listUpdated(int scanDepth) {
+        updateScanDepths.record(scanDepth);
+    }
+
+    public void charDrawn(int scanDepth) {
+        drawScanDepths.record(scanDepth);
+    }
+
+    public void generated(long characters, long nanos, boolean windowMissing) {
+        generationNanos.record(nanos);
+        if (windowMissing) {
+            windowsMissing.increment();
+        }
+    }
+
+    /** Returns the number of characters read by all the trainings. */
+    public long trainedCharacters() {
+        return trainedCharacters.sum();
+    }
+
+    /** Returns the number of characters read per second of training. */
+    public double trainingThroughput() {
+        long nanos = trainingNanos.sum();
+        return (nanos == 0) ? 0 : trainedCharacters.sum() * 1e9 / nanos;
+    }
+
+    /** Returns the number of windows of the model after the last training. */
+    public int windows() {
+        return windows;
+    }
+
+    /** Returns the distribution of the lengths of the lists of the windows that changed
+     *  during the last training, which is the whole model only after a first training.
+     *  After an update(), it describes the lists that the update changed. */
+    public Histogram changedListLengths() {
+        return changedListLengths;
+    }
+
+    /** Returns the distribution of the scan depths of the updates of the lists. */
+    public Histogram updateScanDepths() {
+        return updateScanDepths;
+    }
+
+    /** Returns the distribution of the scan depths of the characters drawn. */
+    public Histogram drawScanDepths() {
+        return drawScanDepths;
+    }
+
+    /** Returns the distribution of the latencies of the generations, in nanoseconds. */
+    public Histogram generationNanos() {
+        return generationNanos;
+    }
+
+    /** Returns the number of generations that stopped on a window that was never seen. */
+    public long windowsMissing() {
+        return windowsMissing.sum();
+    }
+
+    /** Textual representation of all the metrics, one per line. */
+    public String toString() {
+        return String.format("training: %d chars, %.0f chars/s, %d windows%n", trainedCharacters(), trainingThroughput(), windows)
+             + "changed list length (last training): " + changedListLengths + "\n"
+             + "update scan depth: " + updateScanDepths + "\n"
+             + "draw scan depth: " + drawScanDepths + "\n"
+             + "generation ns: " + generationNanos + "\n"
+             + "generations stopped on a missing window: " + windowsMissing() + "\n";
+    }
+}
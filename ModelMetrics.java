@@ -0,0 +1,29 @@
+/** Receives measurements from a LanguageModel, to observe what it does under load.
+ *  A model reports to the metrics given to LanguageModel.setMetrics; a model without
+ *  metrics (the default) measures nothing, and only checks that it has none.
+ *  Generation may report from several threads at the same time. */
+public interface ModelMetrics {
+
+    /** Called at the end of each training (train, trainMapped, trainParallel or update),
+     *  with the number of characters read, the time it took, and the number of windows
+     *  that the model has afterwards. */
+    void trained(long characters, long nanos, int windows);
+
+    /** Called right after trained(), for each window whose counts changed during
+     *  that training, with the number of characters that follow it. The windows that did
+     *  not change are not reported, so after an update() these lengths describe the lists
+     *  that the update changed, not the whole model. */
+    void changedListLength(int length);
+
+    /** Called for each character counted during training, with the number of elements of
+     *  the list of its window that were scanned to find it (the whole list, if it is new). */
+    void listUpdated(int scanDepth);
+
+    /** Called for each character drawn by walking a list (in the LINEAR sampling mode),
+     *  with the number of elements that were scanned. */
+    void charDrawn(int scanDepth);
+
+    /** Called at the end of each generation, with the number of characters generated,
+     *  the time it took, and whether it stopped early on a window that was never seen. */
+    void generated(long characters, long nanos, boolean windowMissing);
+}
@@ -0,0 +1,140 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/** Saves a trained language model to a compact binary file, and loads it back.
+ *  The file holds, in this order (all numbers big-endian):
+ *  <pre>
+ *  int     MAGIC, int VERSION
+ *  int     window length
+ *  byte    1 if the model has a seed, else 0;   int seed
+ *  int     number of windows
+ *  for each window, in the iteration order of CharDataMap:
+ *      char[window length]   the window
+ *      int                   number of characters that follow it
+ *      (char, int)[]         each character and its counter, in list order
+ *  </pre>
+ *  Probabilities are not stored: they are computed again from the counters when loading.
+ *  Windows are stored in the iteration order of the map, and inserted back in that order,
+ *  so the loaded model has the same toString() as the saved one. */
+public class ModelSnapshot {
+
+    // The first bytes of every snapshot file: "LMS" followed by a zero byte
+    private static final int MAGIC = 0x4C4D5300;
+
+    // The version of the file format
+    private static final int VERSION = 1;
+
+    // The size of the header, in bytes, and the size of a character and its counter
+    private static final int HEADER_SIZE = 21;
+    private static final int ENTRY_SIZE = 6;
+
+    /** Saves the given model to the given file. */
+    public static void save(LanguageModel model, String fileName) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(fileName), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(model.windowLength);
+            out.writeByte(model.seeded ? 1 : 0);
+            out.writeInt(model.seed);
+            out.writeInt(model.CharDataMap.size());
+            for (Map.Entry<String, List> entry : model.CharDataMap.entrySet()) {
+                out.writeChars(entry.getKey());
+                List probs = entry.getValue();
+                out.writeInt(probs.getSize());
+                ListIterator it = probs.listIterator(0);
+                while (it.hasNext()) {
+                    CharData cd = it.next();
+                    out.writeChar(cd.chr);
+                    out.writeInt(cd.count);
+                }
+            }
+        }
+    }
+
+    /** Loads a model from the given file. The whole file is memory-mapped and read in place.
+     *  Throws an IOException if the file is not a snapshot, or is truncated or corrupt. */
+    public static LanguageModel load(String fileName) throws IOException {
+        MappedByteBuffer in;
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (in.remaining() < 8 || in.getInt() != MAGIC) {
+            throw new IOException(fileName + " is not a model snapshot");
+        }
+        int version = in.getInt();
+        if (version != VERSION) {
+            throw new IOException(fileName + " has unsupported snapshot version " + version);
+        }
+        try {
+            return load(in, fileName);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Corrupt snapshot " + fileName + ": it ends too soon", e);
+        }
+    }
+
+    // Reads the model that follows the version in the given buffer.
+    private static LanguageModel load(MappedByteBuffer in, String fileName) throws IOException {
+        if (in.capacity() < HEADER_SIZE) {
+            throw new IOException("Corrupt snapshot " + fileName + ": its header is truncated");
+        }
+        int windowLength = in.getInt();
+        boolean seeded = in.get() != 0;
+        int seed = in.getInt();
+        int windows = in.getInt();
+        // Each window takes at least its characters and its size
+        if (windowLength < 0 || windows < 0 || (long) windows * (2L * windowLength + 4) > in.remaining()) {
+            throw new IOException("Corrupt snapshot " + fileName + ": " + windows
+                                  + " windows of length " + windowLength + " do not fit in the file");
+        }
+        LanguageModel model = seeded ? new LanguageModel(windowLength, seed)
+                                     : new LanguageModel(windowLength);
+
+        // Sizes the map to the capacity it had when saved, so that its iteration order,
+        // which depends on the capacity, stays the same, and it is never resized
+        int capacity = 16;
+        while (windows > 0.75 * capacity) {
+            capacity *= 2;
+        }
+        model.CharDataMap = new HashMap<String, List>(capacity);
+        char[] key = new char[windowLength];
+        char[] chars = new char[16];
+        int[] counts = new int[16];
+        for (int w = 0; w < windows; w++) {
+            for (int i = 0; i < windowLength; i++) {
+                key[i] = in.getChar();
+            }
+            int size = in.getInt();
+            if (size < 0 || (long) size * ENTRY_SIZE > in.remaining()) {
+                throw new IOException("Corrupt snapshot " + fileName + ": a window has " + size
+                                      + " characters, which do not fit in the file");
+            }
+            if (size > chars.length) {
+                chars = new char[size];
+                counts = new int[size];
+            }
+            for (int i = 0; i < size; i++) {
+                chars[i] = in.getChar();
+                counts[i] = in.getInt();
+            }
+            // Rebuilds the list from its last element, since elements are added first
+            List probs = new List();
+            for (int i = size - 1; i >= 0; i--) {
+                probs.addFirst(chars[i]);
+                probs.getFirst().count = counts[i];
+            }
+            model.calculateProbabilities(probs);
+            model.CharDataMap.put(new String(key), probs);
+        }
+        return model;
+    }
+}
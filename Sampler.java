@@ -0,0 +1,15 @@
+import java.util.random.RandomGenerator;
+
+/** A frozen table that draws the characters of a list with their probabilities.
+ *  Built once by LanguageModel.calculateProbabilities, so that drawing a character
+ *  does not walk the list. */
+public interface Sampler {
+
+    /** Returns the character drawn by the given random number r (a number between 0 and 1). */
+    char sample(double r);
+
+    /** Returns a character drawn with the given random number generator. */
+    default char sample(RandomGenerator random) {
+        return sample(random.nextDouble());
+    }
+}
@@ -0,0 +1,21 @@
+/** The ways a LanguageModel can draw the next character of a window. */
+public enum SamplingMode {
+
+    /** Walks the list until the cumulative probability is greater than the random number. */
+    LINEAR,
+
+    /** Binary search in an array of cumulative probabilities. Draws exactly the same
+     *  characters as LINEAR, for the same random numbers. */
+    BINARY_SEARCH,
+
+    /** Walker's alias method: one array lookup per draw. Draws the characters with the
+     *  same probabilities as LINEAR, but not the same characters for the same random numbers. */
+    ALIAS,
+
+    /** Binary search in an array of cumulative integer counters, with a uniform integer
+     *  in [0, total): no probabilities are computed, so the p and cp fields of the lists
+     *  stay 0, and LanguageModel.toString() renders them from the counters. Draws the
+     *  characters with the same probabilities as LINEAR, but not the same characters
+     *  for the same random generator. */
+    COUNTS
+}
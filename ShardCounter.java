@@ -0,0 +1,130 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/** Counts the windows of a part (a shard) of a corpus, and the characters that follow them.
+ *  A shard that is too large is split in two halves, counted in parallel, and the two
+ *  counts are merged. The window of the first character of each shard is read from the
+ *  windowLength characters before the shard, so shards overlap by windowLength characters,
+ *  and every (window, character) pair of the corpus is counted exactly once.
+ *  The merged counts are identical to those of a sequential training, including the order
+ *  of the windows (kept in LinkedHashMaps, in order of first occurrence) and the order
+ *  of the characters in each List. */
+public class ShardCounter extends RecursiveTask<LinkedHashMap<String, List>> {
+
+    // The version of this class, for serialization (which ForkJoinTask supports)
+    private static final long serialVersionUID = 1L;
+
+    // The smallest shard that is split in two
+    private static final int MIN_SPLIT = 1 << 16;
+
+    // The corpus, and the length of the windows
+    private final char[] text;
+    private final int windowLength;
+
+    // The shard: the positions of the characters that are counted after their windows
+    private final int from;
+    private final int to;
+
+    // Shards longer than this are split
+    private final int splitSize;
+
+    /** Constructs a task that counts the characters of text at positions from (inclusive)
+     *  to to (exclusive), each after the window of the windowLength characters before it.
+     *  Shards longer than splitSize are split in two. */
+    public ShardCounter(char[] text, int windowLength, int from, int to, int splitSize) {
+        this.text = text;
+        this.windowLength = windowLength;
+        this.from = Math.max(from, windowLength);
+        this.to = to;
+        this.splitSize = Math.max(splitSize, MIN_SPLIT);
+    }
+
+    /** Counts the windows of the first length characters of the given text, with the given
+     *  number of threads. Returns the windows in order of first occurrence. */
+    public static LinkedHashMap<String, List> count(char[] text, int length, int windowLength,
+                                                    int parallelism) {
+        // Splits the corpus in about 4 shards per thread, to balance the load
+        int splitSize = length / (4 * parallelism) + 1;
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return pool.invoke(new ShardCounter(text, windowLength, 0, length, splitSize));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Counts this shard, splitting it if it is too long. */
+    protected LinkedHashMap<String, List> compute() {
+        if (to - from <= splitSize) {
+            return countShard();
+        }
+        int middle = (from + to) >>> 1;
+        ShardCounter left = new ShardCounter(text, windowLength, from, middle, splitSize);
+        ShardCounter right = new ShardCounter(text, windowLength, middle, to, splitSize);
+        right.fork();
+        LinkedHashMap<String, List> counts = left.compute();
+        merge(counts, right.join());
+        return counts;
+    }
+
+    // Counts this shard sequentially.
+    private LinkedHashMap<String, List> countShard() {
+        LinkedHashMap<String, List> counts = new LinkedHashMap<String, List>();
+        if (from >= to) {
+            return counts;
+        }
+        // Looks the windows up without building a String for each one
+        WindowIndex<List> index = new WindowIndex<List>();
+        WindowKey window = new WindowKey(windowLength);
+        for (int i = from - windowLength; i < from; i++) {
+            window.append(text[i]);
+        }
+        for (int i = from; i < to; i++) {
+            List probs = index.get(window);
+            if (probs == null) {
+                probs = new List();
+                String key = window.toString();
+                counts.put(key, probs);
+                index.put(key, probs);
+            }
+            probs.update(text[i]);
+            window.append(text[i]);
+        }
+        return counts;
+    }
+
+    /** Adds the counts of a later part of the corpus to the counts of an earlier part.
+     *  The result is what counting both parts in sequence would give: new windows are
+     *  added after the existing ones, and new characters of a List are added to its
+     *  beginning, in the order of their first occurrence. */
+    public static void merge(Map<String, List> earlier, Map<String, List> later) {
+        for (Map.Entry<String, List> entry : later.entrySet()) {
+            List probs = earlier.get(entry.getKey());
+            if (probs == null) {
+                earlier.put(entry.getKey(), entry.getValue());
+            } else {
+                merge(probs, entry.getValue());
+            }
+        }
+    }
+
+    // Adds the counts of a List of a later part of the corpus to a List of an earlier part.
+    private static void merge(List earlier, List later) {
+        // Walks the list once, since get(i) walks it from its beginning
+        int n = later.getSize();
+        char[] chars = new char[n];
+        int[] counts = new int[n];
+        ListIterator it = later.listIterator(0);
+        for (int i = 0; i < n; i++) {
+            CharData cd = it.next();
+            chars[i] = cd.chr;
+            counts[i] = cd.count;
+        }
+        // The last element of a List is the one that occurred first
+        for (int i = n - 1; i >= 0; i--) {
+            earlier.update(chars[i], counts[i]);
+        }
+    }
+}
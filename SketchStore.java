@@ -0,0 +1,396 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+/** A window store that counts approximately, in a fixed amount of memory, so that a model
+ *  can be trained on a corpus whose windows do not fit in memory.
+ *  The characters that follow the windows are counted in a count-min sketch: depth rows of
+ *  width counters, where a (window, character) pair increments one counter per row, chosen by
+ *  a hash of the pair. The count of a pair is estimated by the smallest of its counters, which
+ *  is never less than its true count, and (with probability at least 1 - e^-depth) at most
+ *  e / width * total() more: see errorBound(). Counters are incremented conservatively (only
+ *  the smallest ones), which keeps the estimates within the same bound, but closer.
+ *  Which windows to keep is decided by a space-saving heavy-hitters summary: it tracks at
+ *  most capacity windows, and when a new window comes and the summary is full, the new window
+ *  replaces the least frequent tracked window, and inherits its count. A tracked window also
+ *  remembers the first MAX_SUCCESSORS different characters that followed it since it was
+ *  tracked (the others are still counted in the sketch).
+ *  materialize() builds the lists of a plain model from the tracked windows, with the
+ *  estimated counts of their characters. */
+public class SketchStore implements WindowStore {
+
+    /** The largest number of different characters that a tracked window remembers. */
+    public static final int MAX_SUCCESSORS = 64;
+
+    // The length of the windows
+    private final int windowLength;
+
+    // The number of rows and the number of counters per row (a power of 2) of the sketch
+    private final int depth;
+    private final int width;
+
+    // The counters of the sketch: row i is sketch[i * width] ... sketch[(i + 1) * width - 1]
+    private final int[] sketch;
+
+    // The number of (window, character) pairs that were counted
+    private long total;
+
+    // The number of windows that can be tracked
+    private final int capacity;
+
+    // The index of the tracked windows: for each bucket (chosen by the 64-bit hash code of a
+    // window), the first index of its chain, or NONE; and for each index, the next index of
+    // the same chain, or NONE
+    private final int[] buckets;
+    private final int[] chains;
+
+    // For each index: the window, its 64-bit hash code, its count, and how much its count
+    // may exceed its true count
+    private final String[] windows;
+    private final long[] hashes;
+    private final long[] counts;
+    private final long[] errors;
+
+    // For each index: the characters that followed the window since it was tracked
+    private final char[][] successors;
+    private final int[] successorSizes;
+
+    // A binary min-heap of the indexes, ordered by count, and the position of each index in it
+    private final int[] heap;
+    private final int[] heapPositions;
+
+    // The number of tracked windows
+    private int size;
+
+    /** Constructs a store for windows of the given length, whose sketch has the given depth
+     *  and width (rounded up to a power of 2), and that tracks at most the given number of
+     *  windows. */
+    public SketchStore(int windowLength, int depth, int width, int capacity) {
+        if (depth < 1 || width < 1 || capacity < 1) {
+            throw new IllegalArgumentException("depth, width and capacity must be positive");
+        }
+        int rounded = 1;
+        while (rounded < width && rounded <= Integer.MAX_VALUE / 2) {
+            rounded *= 2;
+        }
+        if ((long) depth * rounded > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The sketch is too large: " + depth + " rows of " + rounded);
+        }
+        this.windowLength = windowLength;
+        this.depth = depth;
+        this.width = rounded;
+        this.capacity = capacity;
+        sketch = new int[depth * rounded];
+        int bucketCount = 1;
+        while (bucketCount < capacity && bucketCount <= Integer.MAX_VALUE / 2) {
+            bucketCount *= 2;
+        }
+        buckets = new int[bucketCount];
+        Arrays.fill(buckets, WindowStores.NONE);
+        chains = new int[capacity];
+        windows = new String[capacity];
+        hashes = new long[capacity];
+        counts = new long[capacity];
+        errors = new long[capacity];
+        successors = new char[capacity][];
+        successorSizes = new int[capacity];
+        heap = new int[capacity];
+        heapPositions = new int[capacity];
+    }
+
+    /** Returns a store for windows of the given length that uses about the given number of
+     *  bytes: half for a sketch of depth 4, and half for the tracked windows. */
+    public static SketchStore forBudget(int windowLength, long bytes) {
+        int depth = 4;
+        long width = Long.highestOneBit(Math.max(1, bytes / 2 / (4L * depth)));
+        long capacity = Math.max(1, bytes / 2 / bytesPerWindow(windowLength));
+        return new SketchStore(windowLength, depth, (int) Math.min(width, 1 << 28), (int) Math.min(capacity, 1 << 26));
+    }
+
+    // Returns the largest number of bytes used to track one window of the given length: its
+    // String, its slots in the index and the arrays, and MAX_SUCCESSORS successors.
+    private static long bytesPerWindow(int windowLength) {
+        return 24 + ((16 + 2 * windowLength + 7) & ~7) + 8 + 48 + 16 + 2 * MAX_SUCCESSORS;
+    }
+
+    /** Returns the number of bytes used by the sketch and the arrays of the tracked windows,
+     *  with an upper bound for their keys and successors. */
+    public long sizeInBytes() {
+        return 4L * sketch.length + capacity * bytesPerWindow(windowLength);
+    }
+
+    /** Returns the length of the windows of this store. */
+    public int windowLength() {
+        return windowLength;
+    }
+
+    /** Returns the number of (window, character) pairs that were counted. */
+    public long total() {
+        return total;
+    }
+
+    /** Returns the number of windows that are tracked. */
+    public int size() {
+        return size;
+    }
+
+    /** Returns the largest amount by which an estimated count exceeds the true count,
+     *  with probability at least confidence(): e / width * total(). */
+    public double errorBound() {
+        return Math.E / width * total;
+    }
+
+    /** Returns the probability that an estimated count is within errorBound() of the
+     *  true count: 1 - e^-depth. */
+    public double confidence() {
+        return 1 - Math.exp(-depth);
+    }
+
+    // Returns the hash code of the given pair in row i of the sketch (a splitmix64 finalizer
+    // of the 64-bit hash code of the window, the character and the row).
+    private int cell(long windowHash, char chr, int i) {
+        long h = windowHash * 0x9E3779B97F4A7C15L + chr + (i + 1) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        h ^= h >>> 31;
+        return i * width + ((int) h & (width - 1));
+    }
+
+    /** Counts one occurrence of the given character right after the given window. */
+    public void update(CharSequence window, char chr) {
+        long windowHash = WindowStores.hashOf(window);
+        int min = Integer.MAX_VALUE;
+        for (int i = 0; i < depth; i++) {
+            min = Math.min(min, sketch[cell(windowHash, chr, i)]);
+        }
+        // Conservative update: only the counters that hold the estimate grow
+        for (int i = 0; i < depth; i++) {
+            int cell = cell(windowHash, chr, i);
+            if (sketch[cell] == min && min < Integer.MAX_VALUE) {
+                sketch[cell]++;
+            }
+        }
+        total++;
+        addSuccessor(track(window, windowHash), chr);
+    }
+
+    // Counts one occurrence of the given window, whose 64-bit hash code is given, in the
+    // heavy-hitters summary, and returns its index.
+    private int track(CharSequence window, long windowHash) {
+        int k = indexOf(window, windowHash);
+        if (k != WindowStores.NONE) {
+            counts[k]++;
+        } else if (size < capacity) {
+            k = size;
+            windows[k] = window.toString();
+            counts[k] = 1;
+            successors[k] = new char[2];
+            link(k, windowHash);
+            heap[size] = k;
+            heapPositions[k] = size;
+            size++;
+            siftUp(heapPositions[k]);
+        } else {
+            // Replaces the least frequent window, whose count bounds the count of the new one
+            k = heap[0];
+            unlink(k);
+            windows[k] = window.toString();
+            errors[k] = counts[k];
+            counts[k]++;
+            successors[k] = new char[2];
+            successorSizes[k] = 0;
+            link(k, windowHash);
+        }
+        siftDown(heapPositions[k]);
+        return k;
+    }
+
+    // Returns the index of the given tracked window, whose 64-bit hash code is given,
+    // or NONE if it is not tracked. Compares the characters, so that no String is built.
+    private int indexOf(CharSequence window, long windowHash) {
+        int k = buckets[WindowStores.slotOf(windowHash, buckets.length)];
+        while (k != WindowStores.NONE && (hashes[k] != windowHash || !windows[k].contentEquals(window))) {
+            k = chains[k];
+        }
+        return k;
+    }
+
+    // Returns the index of the given tracked window, or NONE if it is not tracked.
+    private int indexOf(CharSequence window) {
+        return indexOf(window, WindowStores.hashOf(window));
+    }
+
+    // Adds index k, whose window has the given 64-bit hash code, to the index.
+    private void link(int k, long windowHash) {
+        int bucket = WindowStores.slotOf(windowHash, buckets.length);
+        hashes[k] = windowHash;
+        chains[k] = buckets[bucket];
+        buckets[bucket] = k;
+    }
+
+    // Removes index k from the index.
+    private void unlink(int k) {
+        int bucket = WindowStores.slotOf(hashes[k], buckets.length);
+        if (buckets[bucket] == k) {
+            buckets[bucket] = chains[k];
+            return;
+        }
+        int previous = buckets[bucket];
+        while (chains[previous] != k) {
+            previous = chains[previous];
+        }
+        chains[previous] = chains[k];
+    }
+
+    // Adds the given character to the successors of window k, if it is not there,
+    // and if window k has less than MAX_SUCCESSORS successors.
+    private void addSuccessor(int k, char chr) {
+        for (int i = 0; i < successorSizes[k]; i++) {
+            if (successors[k][i] == chr) {
+                return;
+            }
+        }
+        if (successorSizes[k] == MAX_SUCCESSORS) {
+            return;
+        }
+        if (successorSizes[k] == successors[k].length) {
+            successors[k] = Arrays.copyOf(successors[k], Math.min(2 * successorSizes[k], MAX_SUCCESSORS));
+        }
+        successors[k][successorSizes[k]++] = chr;
+    }
+
+    // Moves the index at the given position of the heap up, until its parent is smaller.
+    private void siftUp(int position) {
+        int k = heap[position];
+        while (position > 0) {
+            int parent = (position - 1) / 2;
+            if (counts[heap[parent]] <= counts[k]) {
+                break;
+            }
+            heap[position] = heap[parent];
+            heapPositions[heap[position]] = position;
+            position = parent;
+        }
+        heap[position] = k;
+        heapPositions[k] = position;
+    }
+
+    // Moves the index at the given position of the heap down, until its children are larger.
+    private void siftDown(int position) {
+        int k = heap[position];
+        while (2 * position + 1 < size) {
+            int child = 2 * position + 1;
+            if (child + 1 < size && counts[heap[child + 1]] < counts[heap[child]]) {
+                child++;
+            }
+            if (counts[k] <= counts[heap[child]]) {
+                break;
+            }
+            heap[position] = heap[child];
+            heapPositions[heap[position]] = position;
+            position = child;
+        }
+        heap[position] = k;
+        heapPositions[k] = position;
+    }
+
+    /** Returns the estimated number of times that the given character followed the given
+     *  window: at least the true number, and at most errorBound() more, with probability
+     *  confidence(). */
+    public int estimate(CharSequence window, char chr) {
+        long windowHash = WindowStores.hashOf(window);
+        int min = Integer.MAX_VALUE;
+        for (int i = 0; i < depth; i++) {
+            min = Math.min(min, sketch[cell(windowHash, chr, i)]);
+        }
+        return min;
+    }
+
+    /** Returns the estimated number of occurrences of the given window in the heavy-hitters
+     *  summary, or 0 if it is not tracked. */
+    public long windowCount(CharSequence window) {
+        int k = indexOf(window);
+        return (k == WindowStores.NONE) ? 0 : counts[k];
+    }
+
+    /** Returns how much windowCount(window) may exceed the true number of occurrences of the
+     *  given window since it was tracked, or 0 if it is not tracked. */
+    public long windowError(CharSequence window) {
+        int k = indexOf(window);
+        return (k == WindowStores.NONE) ? 0 : errors[k];
+    }
+
+    /** Adds to the given map a list for each tracked window, with the characters that followed
+     *  it since it was tracked, and their estimated counts. The lists are marked as changed, so
+     *  that LanguageModel.computeProbabilities() computes their probabilities. */
+    public void materialize(Map<String, List> lists) {
+        for (int k = 0; k < size; k++) {
+            // Backwards, since a list adds a new character at its beginning: the list has the
+            // order of the successors, like toString() and getRandomChar()
+            List probs = new List();
+            for (int i = successorSizes[k] - 1; i >= 0; i--) {
+                char chr = successors[k][i];
+                probs.update(chr, estimate(windows[k], chr));
+            }
+            if (probs.getSize() > 0) {
+                lists.put(windows[k], probs);
+            }
+        }
+    }
+
+    /** Does nothing: the probabilities of a window are computed from the sketch when
+     *  a character is drawn from it. */
+    public void calculateProbabilities() {
+    }
+
+    /** Returns a character that followed the given window since it was tracked, drawn with
+     *  the estimated counts: the first one whose cumulative share of the estimated counts
+     *  is greater than r. Returns -1 if the window is not tracked. */
+    public int getRandomChar(CharSequence window, double r) {
+        int k = indexOf(window);
+        if (k == WindowStores.NONE || successorSizes[k] == 0) {
+            return -1;
+        }
+        int n = successorSizes[k];
+        long sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += estimate(windows[k], successors[k][i]);
+        }
+        long target = (long) (r * sum);
+        // Adds the estimates up again, until their running sum is greater than the target
+        long cumulative = estimate(windows[k], successors[k][0]);
+        int i = 0;
+        while (i < n - 1 && cumulative <= target) {
+            i++;
+            cumulative += estimate(windows[k], successors[k][i]);
+        }
+        return successors[k][i];
+    }
+
+    /** Returns a textual representation of this store, in the format of
+     *  LanguageModel.toString(): the tracked windows, with the characters that followed
+     *  them since they were tracked, their estimated counts, and the probabilities of
+     *  these counts. */
+    public String toString() {
+        return WindowStore.toString(this::appendTo);
+    }
+
+    /** Appends the text of toString() to the given output, one window at a time. */
+    public void appendTo(Appendable out) throws IOException {
+        for (int k = 0; k < size; k++) {
+            int n = successorSizes[k];
+            if (n == 0) {
+                continue;
+            }
+            int[] estimates = new int[n];
+            long sum = 0;
+            for (int i = 0; i < n; i++) {
+                estimates[i] = estimate(windows[k], successors[k][i]);
+                sum += estimates[i];
+            }
+            out.append(windows[k]).append(" : ");
+            WindowStores.appendEntries(out, successors[k], estimates, n, sum);
+            out.append('\n');
+        }
+    }
+}
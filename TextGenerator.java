@@ -0,0 +1,94 @@
+import java.io.Reader;
+import java.util.NoSuchElementException;
+import java.util.random.RandomGenerator;
+
+/** Generates a random text with a language model, one character at a time, as it is read.
+ *  Reads the same text that LanguageModel.generate(initialText, textLength) returns:
+ *  the initial text, followed by up to textLength generated characters (fewer if the
+ *  model reaches a window that it has never seen). Only the last window is kept, so the
+ *  memory used does not depend on the length of the text, and the reader controls the pace:
+ *  nothing is generated before it is read. */
+public class TextGenerator extends Reader {
+
+    // The model that draws the characters, and the random number generator it uses
+    private final LanguageModel model;
+    private final RandomGenerator random;
+
+    // The initial text, and the index of its next character to read
+    private final String initialText;
+    private int initialIndex;
+
+    // The number of characters left to generate
+    private long remaining;
+
+    // The window of the last characters of the text
+    private final WindowKey window;
+
+    // The next generated character, drawn ahead of time by hasNextChar(),
+    // or -1 if it was not drawn yet
+    private int next = -1;
+
+    /** Constructs a generator of a text that starts with the given initial text,
+     *  followed by up to textLength characters drawn with the given model,
+     *  using the given random number generator. */
+    public TextGenerator(LanguageModel model, String initialText, long textLength, RandomGenerator random) {
+        this.model = model;
+        this.random = random;
+        this.initialText = initialText;
+        this.window = new WindowKey(model.windowLength, initialText);
+        // Like generate(), generates nothing if the initial text is shorter than a window,
+        // unless the store of the model learns short windows
+        boolean tooShort = initialText.length() < model.windowLength && !model.learnsShortWindows();
+        this.remaining = tooShort ? 0 : textLength;
+    }
+
+    /** Checks if the text has more characters. */
+    public boolean hasNextChar() {
+        if (initialIndex < initialText.length() || next != -1) {
+            return true;
+        }
+        if (remaining == 0) {
+            return false;
+        }
+        next = model.getRandomChar(window, random);
+        if (next == -1) {
+            // The window was never seen: the text ends here
+            remaining = 0;
+            return false;
+        }
+        return true;
+    }
+
+    /** Returns the next character of the text. */
+    public char readChar() {
+        if (!hasNextChar()) {
+            throw new NoSuchElementException("The generated text has no more characters");
+        }
+        if (initialIndex < initialText.length()) {
+            return initialText.charAt(initialIndex++);
+        }
+        char c = (char) next;
+        next = -1;
+        remaining--;
+        window.append(c);
+        return c;
+    }
+
+    /** Reads up to len characters of the text into cbuf, starting at index off.
+     *  Returns the number of characters read, or -1 if the text has ended. */
+    public int read(char[] cbuf, int off, int len) {
+        int count = 0;
+        while (count < len && hasNextChar()) {
+            cbuf[off + count] = readChar();
+            count++;
+        }
+        return (count == 0 && len > 0) ? -1 : count;
+    }
+
+    /** Stops the generation. */
+    public void close() {
+        initialIndex = initialText.length();
+        remaining = 0;
+        next = -1;
+    }
+}
@@ -0,0 +1,89 @@
+import java.util.Arrays;
+
+/** An index from windows to values, that can be looked up with any character sequence of
+ *  the characters of a window, such as a WindowKey, without building a String for it.
+ *  Windows are found by open addressing (linear probing) on their 64-bit hash code, like in
+ *  a WindowTable, and told apart by comparing their characters with String.contentEquals.
+ *  A window cannot be removed. */
+class WindowIndex<V> {
+
+    // The index grows when more than this fraction of its slots is used
+    private static final double MAX_LOAD = 0.75;
+
+    // The open addressing slots: the index of the window stored in each slot plus one
+    // (0 marks an empty slot)
+    private int[] slots;
+
+    // The windows, and their values, in the order in which they were added
+    private String[] keys;
+    private Object[] values;
+
+    // The number of windows in this index
+    private int size;
+
+    /** Constructs an empty index. */
+    WindowIndex() {
+        slots = new int[16];
+        keys = new String[8];
+        values = new Object[8];
+    }
+
+    /** Returns the number of windows in this index. */
+    int size() {
+        return size;
+    }
+
+    /** Returns the value of the given window, or null if the window is not in this index. */
+    @SuppressWarnings("unchecked")
+    V get(CharSequence window) {
+        int k = indexOf(window, WindowStores.hashOf(window));
+        return (k == WindowStores.NONE) ? null : (V) values[k];
+    }
+
+    /** Sets the value of the given window, and adds the window if it is not in this index. */
+    void put(String window, V value) {
+        long hash = WindowStores.hashOf(window);
+        int k = indexOf(window, hash);
+        if (k != WindowStores.NONE) {
+            values[k] = value;
+            return;
+        }
+        if (size + 1 > MAX_LOAD * slots.length) {
+            grow();
+        }
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, 2 * size);
+            values = Arrays.copyOf(values, 2 * size);
+        }
+        keys[size] = window;
+        values[size] = value;
+        int slot = WindowStores.slotOf(hash, slots.length);
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & (slots.length - 1);
+        }
+        slots[slot] = ++size;
+    }
+
+    // Returns the index of the given window, whose hash code is given, or NONE.
+    private int indexOf(CharSequence window, long hash) {
+        for (int slot = WindowStores.slotOf(hash, slots.length); slots[slot] != 0;
+                slot = (slot + 1) & (slots.length - 1)) {
+            if (keys[slots[slot] - 1].contentEquals(window)) {
+                return slots[slot] - 1;
+            }
+        }
+        return WindowStores.NONE;
+    }
+
+    // Doubles the number of slots, and puts the windows back in them.
+    private void grow() {
+        slots = new int[2 * slots.length];
+        for (int k = 0; k < size; k++) {
+            int slot = WindowStores.slotOf(WindowKey.longHashOf(keys[k]), slots.length);
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & (slots.length - 1);
+            }
+            slots[slot] = k + 1;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/** Represents the window of the last characters of a text, used to look up the model's map.
+ *  Appending a character slides the window and updates its hash code in constant time,
+ *  so no new String is built for every character of the text.
+ *  A window key only equals another window key: a store whose windows are strings looks
+ *  it up by its hash code and its characters (see WindowIndex), not with map.get(). */
+public class WindowKey implements CharSequence {
+
+    // The multiplier of the polynomial hash code, the same one that String.hashCode() uses
+    private static final int BASE = 31;
+
+    // The characters of this window, stored in a circular array
+    private final char[] chars;
+
+    // The index in chars of the first (oldest) character of this window
+    private int start;
+
+    // The number of characters in this window (at most chars.length)
+    private int length;
+
+    // The hash code of this window, kept equal to toString().hashCode()
+    private int hash;
+
+    // BASE to the power of the capacity of this window, used to take the
+    // oldest character out of the hash code
+    private final int dropFactor;
+
+    // The multiplier of the 64-bit hash code of this window
+    private static final long LONG_BASE = 0x100000001B3L;
+
+    // The 64-bit hash code of this window, kept equal to longHashOf(this)
+    private long longHash;
+
+    // LONG_BASE to the power of the capacity of this window
+    private final long longDropFactor;
+
+    // A position in the structure of a window store that stands for this window, so that the
+    // store can find the window without looking it up, or -1 if there is none
+    private int hint = -1;
+
+    // A position that will stand for this window once the character pendingChar is appended
+    // to it, or -1 if there is none
+    private int pendingHint = -1;
+    private char pendingChar;
+
+    /** Constructs an empty window that holds up to the given number of characters. */
+    public WindowKey(int capacity) {
+        chars = new char[capacity];
+        int factor = 1;
+        long longFactor = 1;
+        for (int i = 0; i < capacity; i++) {
+            factor *= BASE;
+            longFactor *= LONG_BASE;
+        }
+        dropFactor = factor;
+        longDropFactor = longFactor;
+    }
+
+    /** Constructs a window that holds up to the given number of characters,
+     *  and fills it with the last characters of the given text. */
+    public WindowKey(int capacity, CharSequence text) {
+        this(capacity);
+        set(text);
+    }
+
+    /** Returns the maximal number of characters in this window. */
+    public int capacity() {
+        return chars.length;
+    }
+
+    /** Checks if this window holds as many characters as its capacity. */
+    public boolean isFull() {
+        return length == chars.length;
+    }
+
+    /** Empties this window. */
+    public void clear() {
+        hint = -1;
+        pendingHint = -1;
+        start = 0;
+        length = 0;
+        hash = 0;
+        longHash = 0;
+    }
+
+    /** Sets this window to the last characters of the given text. */
+    public void set(CharSequence text) {
+        clear();
+        for (int i = Math.max(0, text.length() - chars.length); i < text.length(); i++) {
+            append(text.charAt(i));
+        }
+    }
+
+    /** Adds the given character at the end of this window.
+     *  If the window is full, its first character is dropped. */
+    public void append(char c) {
+        hint = (pendingHint != -1 && c == pendingChar) ? pendingHint : -1;
+        pendingHint = -1;
+        if (chars.length == 0) {
+            return;
+        }
+        if (length < chars.length) {
+            chars[(start + length) % chars.length] = c;
+            length++;
+            hash = BASE * hash + c;
+            longHash = LONG_BASE * longHash + c;
+        } else {
+            char dropped = chars[start];
+            chars[start] = c;
+            start = (start + 1) % chars.length;
+            hash = BASE * hash + c - dropFactor * dropped;
+            longHash = LONG_BASE * longHash + c - longDropFactor * dropped;
+        }
+    }
+
+    /** Returns the position that a window store gave for this window with expect(),
+     *  or -1 if there is none. The position is only meaningful to that store. */
+    public int hint() {
+        return hint;
+    }
+
+    /** Tells this window that once the given character is appended to it, it will stand
+     *  at the given position of a window store. A store that can tell where the next
+     *  window is (for example, by following a transition) uses this to skip the lookup
+     *  of the next window. Appending another character discards the position. */
+    public void expect(char c, int position) {
+        pendingChar = c;
+        pendingHint = position;
+    }
+
+    /** Returns the number of characters in this window. */
+    public int length() {
+        return length;
+    }
+
+    /** Returns the character at the given index of this window. */
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException();
+        }
+        return chars[(start + index) % chars.length];
+    }
+
+    /** Returns the characters of this window between the given indexes, as a String. */
+    public CharSequence subSequence(int from, int to) {
+        return toString().substring(from, to);
+    }
+
+    /** Returns the hash code of this window, which is the hash code of toString(). */
+    public int hashCode() {
+        return hash;
+    }
+
+    /** Returns the 64-bit hash code of this window, which is longHashOf(toString()).
+     *  It is used by tables that tell windows apart by their hash code. */
+    public long longHash() {
+        return longHash;
+    }
+
+    /** Returns the 64-bit hash code of the given characters. */
+    public static long longHashOf(CharSequence text) {
+        long h = 0;
+        for (int i = 0; i < text.length(); i++) {
+            h = LONG_BASE * h + text.charAt(i);
+        }
+        return h;
+    }
+
+    /** Returns the 64-bit hash code of the given characters of the given array,
+     *  which is longHashOf() of the same characters. */
+    public static long longHashOf(char[] chars, int offset, int length) {
+        long h = 0;
+        for (int i = offset; i < offset + length; i++) {
+            h = LONG_BASE * h + chars[i];
+        }
+        return h;
+    }
+
+    /** Checks if the given object is a window with the same characters as this window. */
+    public boolean equals(Object other) {
+        if (!(other instanceof WindowKey)) {
+            return false;
+        }
+        WindowKey window = (WindowKey) other;
+        if (window.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (window.charAt(i) != chars[(start + i) % chars.length]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Returns the characters of this window, as a new String. */
+    public String toString() {
+        StringBuilder str = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            str.append(chars[(start + i) % chars.length]);
+        }
+        return str.toString();
+    }
+}
@@ -0,0 +1,59 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/** Stores the windows of a language model, and counts the characters that follow each window.
+ *  By default a LanguageModel keeps its windows in its CharDataMap; a model that is
+ *  constructed with a window store keeps them in the store instead. */
+public interface WindowStore {
+
+    /** Counts one occurrence of the given character right after the given window. */
+    void update(CharSequence window, char chr);
+
+    /** Computes the probabilities of the characters that follow each window.
+     *  Called once the training is over, before any call to getRandomChar. */
+    void calculateProbabilities();
+
+    /** Returns a character that follows the given window, chosen with the Monte Carlo
+     *  technique for the given random number r (a number between 0 and 1): the first
+     *  character whose cumulative probability is greater than r.
+     *  Returns -1 if the window was never seen. */
+    int getRandomChar(CharSequence window, double r);
+
+    /** Returns the length of the windows of this store. A model only accepts a store
+     *  whose window length is its own. */
+    int windowLength();
+
+    /** Returns the number of windows in this store. */
+    int size();
+
+    /** Appends a textual representation of this store to the given output, in the format
+     *  of LanguageModel.toString(), one window at a time, so that the text of a large
+     *  store is never held in memory as a whole. */
+    void appendTo(Appendable out) throws IOException;
+
+    /** Something that appends its text to an output, like appendTo(). */
+    interface Text {
+        void appendTo(Appendable out) throws IOException;
+    }
+
+    /** Returns the text that the given Text appends, for example toString(store::appendTo):
+     *  the toString() of a store, or of one of its windows. */
+    static String toString(Text text) {
+        StringBuilder str = new StringBuilder();
+        try {
+            text.appendTo(str);
+        } catch (IOException e) {
+            // A StringBuilder does not throw
+            throw new UncheckedIOException(e);
+        }
+        return str.toString();
+    }
+
+    /** Returns true if this store also counts the characters at the beginning of each text,
+     *  after the windows shorter than the window length of the model that precede them, and
+     *  can draw a character after such a short window. A model whose store does so generates
+     *  from an initial text shorter than its window length. By default, a store does not. */
+    default boolean learnsShortWindows() {
+        return false;
+    }
+}
@@ -0,0 +1,98 @@
+import java.io.IOException;
+
+/** Hashing, sampling and rendering code shared by the window stores that keep their data
+ *  in flat arrays. */
+final class WindowStores {
+
+    /** Marks the end of a chain of entries, or a missing node or entry. */
+    static final int NONE = -1;
+
+    private WindowStores() {
+    }
+
+    /** Returns the 64-bit hash code of the given window, without recomputing it
+     *  if the window is a WindowKey. */
+    static long hashOf(CharSequence window) {
+        if (window instanceof WindowKey) {
+            return ((WindowKey) window).longHash();
+        }
+        return WindowKey.longHashOf(window);
+    }
+
+    /** Returns the first slot to probe for the given hash code, in a table of the given
+     *  number of slots (a power of 2). The hash code is mixed, because a polynomial hash
+     *  code has weak low bits for windows that differ by one character. */
+    static int slotOf(long hash, int slots) {
+        long h = hash * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & (slots - 1);
+    }
+
+    /** Returns the entry drawn by r (a number between 0 and 1) in the chain of entries that
+     *  starts at head, whose counts sum to total: the first entry whose cumulative count is
+     *  greater than r * total. With the probabilities of the counts, this is the entry whose
+     *  cumulative probability is the first one greater than r. The chain must not be empty. */
+    static int sample(int[] counts, int[] nexts, int head, int total, double r) {
+        int n = (int) (r * total);
+        int e = head;
+        int cumulative = counts[e];
+        while (cumulative <= n && nexts[e] != NONE) {
+            e = nexts[e];
+            cumulative += counts[e];
+        }
+        return e;
+    }
+
+    /** Returns the probability of the given count among counts whose sum is total. */
+    static double probability(int count, long total) {
+        return (double) count / total;
+    }
+
+    /** Sets cps[0] ... cps[n - 1] to the cumulative probabilities of counts[0] ... counts[n - 1],
+     *  whose sum is total, with the arithmetic of LanguageModel.calculateProbabilities(List):
+     *  the probabilities are added up in order, and the last cumulative probability is 1.0.
+     *  Every store computes its probabilities here, so that they all agree to the last bit. */
+    static void cumulativeProbabilities(int[] counts, int n, long total, double[] cps) {
+        double cumulative = 0.0;
+        for (int i = 0; i < n; i++) {
+            cumulative += probability(counts[i], total);
+            cps[i] = cumulative;
+        }
+        if (n > 0) {
+            cps[n - 1] = 1.0;
+        }
+    }
+
+    /** Appends the first n characters of chars, with their counts, whose sum is total, in the
+     *  textual format of List, with the probabilities of cumulativeProbabilities(). */
+    static void appendEntries(Appendable out, char[] chars, int[] counts, int n, long total) throws IOException {
+        double[] cps = new double[n];
+        cumulativeProbabilities(counts, n, total, cps);
+        out.append('(');
+        for (int i = 0; i < n; i++) {
+            CharData.appendTo(out, chars[i], counts[i], probability(counts[i], total), cps[i]);
+            if (i < n - 1) {
+                out.append(' ');
+            }
+        }
+        out.append(')');
+    }
+
+    /** Appends the chain of entries that starts at head, whose counts sum to total,
+     *  like appendEntries(out, chars, counts, n, total). */
+    static void appendEntries(Appendable out, char[] chars, int[] counts, int[] nexts, int head, int total)
+            throws IOException {
+        int n = 0;
+        for (int e = head; e != NONE; e = nexts[e]) {
+            n++;
+        }
+        char[] chainChars = new char[n];
+        int[] chainCounts = new int[n];
+        int i = 0;
+        for (int e = head; e != NONE; e = nexts[e]) {
+            chainChars[i] = chars[e];
+            chainCounts[i] = counts[e];
+            i++;
+        }
+        appendEntries(out, chainChars, chainCounts, n, total);
+    }
+}
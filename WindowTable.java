@@ -0,0 +1,210 @@
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/** A window store that keeps all its data in flat arrays of primitives.
+ *  Windows are found by open addressing (linear probing) on their 64-bit hash code,
+ *  and told apart by comparing their characters, which are stored one window after
+ *  the other in a single char array; the hash codes are not stored. The characters that
+ *  follow each window are kept in a pool of entries (a character and its count), linked
+ *  to each other by index, in the same order as in a List. No probability is stored:
+ *  a character is drawn from the counts and the total of its window.
+ *  Compared to a HashMap of List objects, no object is allocated per window or per entry. */
+public class WindowTable implements WindowStore {
+
+    // The table grows when more than this fraction of its slots is used
+    private static final double MAX_LOAD = 0.75;
+
+
+    // The length of the windows in this table
+    private final int windowLength;
+
+    // The open addressing slots: the index of the window stored in each slot plus one
+    // (0 marks an empty slot)
+    private int[] slots;
+
+    // The number of windows in this table
+    private int size;
+
+    // The characters of window k are keys[k * windowLength] ... keys[(k + 1) * windowLength - 1]
+    private char[] keys;
+
+    // For each window: the index of its first entry, and the sum of the counts of its entries
+    private int[] heads;
+    private int[] totals;
+
+    // The pool of entries: the character, count, and index of the next entry of the same window
+    private char[] chars;
+    private int[] counts;
+    private int[] nexts;
+
+    // The number of entries in the pool
+    private int entries;
+
+    /** Constructs an empty table for windows of the given length. */
+    public WindowTable(int windowLength) {
+        this.windowLength = windowLength;
+        slots = new int[16];
+        keys = new char[8 * windowLength];
+        heads = new int[8];
+        totals = new int[8];
+        chars = new char[16];
+        counts = new int[16];
+        nexts = new int[16];
+    }
+
+    /** Returns the length of the windows of this table. */
+    public int windowLength() {
+        return windowLength;
+    }
+
+    /** Returns the number of windows in this table. */
+    public int size() {
+        return size;
+    }
+
+    /** Returns the number of entries in this table, that is, the number of
+     *  (window, character) pairs that were seen. */
+    public int entries() {
+        return entries;
+    }
+
+    /** Returns an estimate of the number of bytes used by the arrays of this table. */
+    public long sizeInBytes() {
+        return 4L * slots.length + 2L * keys.length + 8L * heads.length + 10L * chars.length;
+    }
+
+    // Returns the index of the given window, or -1 if it is not in this table.
+    private int indexOf(CharSequence window, long hash) {
+        if (window.length() != windowLength) {
+            return -1;
+        }
+        int mask = slots.length - 1;
+        for (int slot = WindowStores.slotOf(hash, slots.length); slots[slot] != 0; slot = (slot + 1) & mask) {
+            if (keyEquals(slots[slot] - 1, window)) {
+                return slots[slot] - 1;
+            }
+        }
+        return -1;
+    }
+
+    // Checks if window k has the characters of the given window.
+    private boolean keyEquals(int k, CharSequence window) {
+        int offset = k * windowLength;
+        for (int i = 0; i < windowLength; i++) {
+            if (keys[offset + i] != window.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Adds the given window to this table, and returns its index.
+    private int add(CharSequence window, long hash) {
+        if (size + 1 > MAX_LOAD * slots.length) {
+            rehash(2 * slots.length);
+        }
+        if (size == heads.length) {
+            int capacity = size + size / 2;
+            keys = Arrays.copyOf(keys, capacity * windowLength);
+            heads = Arrays.copyOf(heads, capacity);
+            totals = Arrays.copyOf(totals, capacity);
+        }
+        int k = size++;
+        for (int i = 0; i < windowLength; i++) {
+            keys[k * windowLength + i] = window.charAt(i);
+        }
+        heads[k] = WindowStores.NONE;
+        int mask = slots.length - 1;
+        int slot = WindowStores.slotOf(hash, slots.length);
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = k + 1;
+        return k;
+    }
+
+    // Moves all the windows to a new slot array of the given length,
+    // computing the hash code of each window again from its characters.
+    private void rehash(int length) {
+        slots = new int[length];
+        int mask = length - 1;
+        for (int k = 0; k < size; k++) {
+            int slot = WindowStores.slotOf(WindowKey.longHashOf(keys, k * windowLength, windowLength), length);
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = k + 1;
+        }
+    }
+
+    /** Counts one occurrence of the given character right after the given window. */
+    public void update(CharSequence window, char chr) {
+        long hash = WindowStores.hashOf(window);
+        int k = indexOf(window, hash);
+        if (k == -1) {
+            k = add(window, hash);
+        }
+        totals[k]++;
+        for (int e = heads[k]; e != WindowStores.NONE; e = nexts[e]) {
+            if (chars[e] == chr) {
+                counts[e]++;
+                return;
+            }
+        }
+        // A character that is new to the window heads its chain, so the entries
+        // of a window are in the order of its List in a plain model
+        if (entries == chars.length) {
+            int capacity = entries + entries / 2;
+            chars = Arrays.copyOf(chars, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            nexts = Arrays.copyOf(nexts, capacity);
+        }
+        int e = entries++;
+        chars[e] = chr;
+        counts[e] = 1;
+        nexts[e] = heads[k];
+        heads[k] = e;
+    }
+
+    /** Does nothing: the table keeps no probabilities, only counts and totals, which
+     *  update() keeps current. */
+    public void calculateProbabilities() {
+    }
+
+    /** Returns the first character that follows the given window whose cumulative
+     *  probability is greater than r, or -1 if the window was never seen. The probabilities
+     *  are those of the counts of the window, so a model with this table generates the
+     *  same text as a plain model. */
+    public int getRandomChar(CharSequence window, double r) {
+        int k = indexOf(window, WindowStores.hashOf(window));
+        if (k == -1) {
+            return -1;
+        }
+        return chars[WindowStores.sample(counts, nexts, heads[k], totals[k], r)];
+    }
+
+    /** Returns the list of characters that follow the given window, in the textual
+     *  format of List, or null if the window was never seen. */
+    public String toString(CharSequence window) {
+        int k = indexOf(window, WindowStores.hashOf(window));
+        return (k == -1) ? null : WindowStore.toString(
+                out -> WindowStores.appendEntries(out, chars, counts, nexts, heads[k], totals[k]));
+    }
+
+    /** Returns a textual representation of this table, in the format of
+     *  LanguageModel.toString(). Windows are listed in the order they were added. */
+    public String toString() {
+        return WindowStore.toString(this::appendTo);
+    }
+
+    /** Appends the text of toString() to the given output, one window at a time. */
+    public void appendTo(Appendable out) throws IOException {
+        for (int k = 0; k < size; k++) {
+            out.append(CharBuffer.wrap(keys, k * windowLength, windowLength));
+            out.append(" : ");
+            WindowStores.appendEntries(out, chars, counts, nexts, heads[k], totals[k]);
+            out.append('\n');
+        }
+    }
+}